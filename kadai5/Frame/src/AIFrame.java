@@ -13,14 +13,19 @@ abstract class AIFrame {
 
 	private boolean mIsInstance;
 	private String mName;
+	// スロット値の変更を知らせるフレームシステム
+	private AIFrameSystem mFrameSystem;
 	private HashMap<String, AISlot> mSlots = new HashMap<String, AISlot>();
 	private AIWhenConstructedProc mWhenConstructedProc = null;
+	// このフレーム(スーパーフレームから継ぐ分も含む)のスロット値が変わった回数
+	private int mModCount;
 
 	/**
 	 * AIFrame<br>
 	 * コンストラクタ
 	 */
 	AIFrame(AIFrameSystem inFrameSystem, AIClassFrame inSuperFrame, String inName, boolean inIsInstance) {
+		mFrameSystem = inFrameSystem;
 		mName = inName;
 		mIsInstance = inIsInstance;
 		if (inSuperFrame != null)
@@ -33,6 +38,7 @@ abstract class AIFrame {
 	 * コンストラクタ
 	 */
 	AIFrame(AIFrameSystem inFrameSystem, Iterator inSuperFrames, String inName, boolean inIsInstance) {
+		mFrameSystem = inFrameSystem;
 		mName = inName;
 		mIsInstance = inIsInstance;
 		while (inSuperFrames.hasNext() == true) {
@@ -224,6 +230,7 @@ abstract class AIFrame {
 		}
 
 		slot.setSlotValue(inSlotValue);
+		slotChanged(inSlotName);
 
 		writeSlotValueWithWhenWrittenProc(inFrameSystem, inSlotName, inSlotValue);
 	}
@@ -267,6 +274,7 @@ abstract class AIFrame {
 			mSlots.put(inSlotName, slot);
 		}
 		slot.setSlotValue(inSlotValue);
+		slotChanged(inSlotName);
 	}
 
 	public void addSlotValue(String inSlotName, Object inSlotValue) {
@@ -276,12 +284,15 @@ abstract class AIFrame {
 			mSlots.put(inSlotName, slot);
 		}
 		slot.addSlotValue(inSlotValue);
+		slotChanged(inSlotName);
 	}
 
 	public void removeSlotValue(String inSlotName, Object inSlotValue) {
 		AISlot slot = getSlot(inSlotName);
-		if (slot != null)
+		if (slot != null) {
 			slot.removeSlotValue(inSlotValue);
+			slotChanged(inSlotName);
+		}
 	}
 
 	public void setDemonProc(int inType, String inSlotName, AIDemonProc inDemonProc) {
@@ -291,6 +302,17 @@ abstract class AIFrame {
 			mSlots.put(inSlotName, slot);
 		}
 		slot.setDemonProc(inType, inDemonProc);
+		if (mFrameSystem != null && (inType == AISlot.WHEN_REQUESTED || inType == AISlot.WHEN_READ))
+			mFrameSystem.demonChanged(inSlotName);
+	}
+
+	/**
+	 * slotChanged<br>
+	 * スロット値が変わったことをフレームシステムに知らせる．
+	 */
+	void slotChanged(String inSlotName) {
+		if (mFrameSystem != null)
+			mFrameSystem.slotChanged(this, inSlotName);
 	}
 
 	// ------------------------------------------------------------------
@@ -334,6 +356,23 @@ abstract class AIFrame {
 		return list.iterator();
 	}
 
+	/**
+	 * このフレームのスロット値が変わった回数を取得<br>
+	 * スーパーフレームのスロット値が変わったときにも増える．描画の作り直しに使う．
+	 *
+	 * @return 変わった回数
+	 */
+	public int getModCount() {
+		return mModCount;
+	}
+
+	/**
+	 * スロット値が変わったときにフレームシステムから呼ばれる
+	 */
+	void modified() {
+		mModCount++;
+	}
+
 	/**
 	 * このフレームの名前を取得
 	 *
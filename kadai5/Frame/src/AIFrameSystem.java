@@ -5,10 +5,15 @@
  */
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class AIFrameSystem {
 
@@ -18,6 +23,37 @@ public class AIFrameSystem {
 	// フレーム名をインデックスとして利用．
 	private HashMap<String, AIFrame> mFrames = new HashMap<String, AIFrame>();
 
+	// 質問に使うスロット値の索引．フレームやスロット値が変わるたびに更新する．
+	private SlotIndex mSlotIndex = new SlotIndex();
+
+	// when-requested/when-read procedure が設定されたスロット名．
+	// 値が読むたびに変わりうるので索引には載せず，質問のたびに読む．
+	private Set<String> mDynamicSlots = new HashSet<>();
+
+	// フレーム名 -> 直接のサブフレーム名
+	private Map<String, Set<String>> mSubFrames = new HashMap<>();
+
+	// フレーム名 -> 直接のスーパーフレーム名
+	private Map<String, Set<String>> mSuperFrames = new HashMap<>();
+
+	// フレームやスロット値が変わるたびに増える数．描画の作り直しに使う．
+	private int mModCount;
+
+	// 質問のリストを解くための結合器
+	private QueryJoiner mJoiner = new QueryJoiner(new QueryJoiner.Source() {
+		public List<Map<String, String>> query(String[] theTerms) {
+			return AIFrameSystem.this.query(new Link(theTerms[0], theTerms[1], theTerms[2]));
+		}
+
+		public int estimate(String[] theTerms) {
+			return estimateQuery(theTerms[0], theTerms[1], theTerms[2]);
+		}
+
+		public boolean substitutable(String[] theTerms) {
+			return isSubstitutable(theTerms[1]);
+		}
+	});
+
 	/**
 	 * AIFrameSystem <br>
 	 * コンストラクタ
@@ -106,6 +142,9 @@ public class AIFrameSystem {
 			frame = new AIClassFrame(this, inSuperFrame, inName);
 		}
 		mFrames.put(inName, frame);
+		updateSuperFrames(frame);
+		indexFrames(inName, null);
+		mModCount++;
 	}
 
 	/**
@@ -265,7 +304,8 @@ public class AIFrameSystem {
 	}
 
 	/**
-	 * 単体の質問をする
+	 * 単体の質問をする<br>
+	 * 質問の定数部分を使ってスロット値の索引から候補を引き，照合する．
 	 *
 	 * @param aQuestion
 	 *            単体の質問
@@ -274,44 +314,284 @@ public class AIFrameSystem {
 	 */
 	public List<Map<String, String>> query(Link aQuestion) {
 		List<Map<String, String>> tResuls = new ArrayList<>();
-		Matcher tMather = new Matcher();
-		// フレームで回す
-		for (String tFrameName : mFrames.keySet()) {
-			// スロットで回す
-			for (String tSlotName : mFrames.get(tFrameName).getSlotNames(true)) {
-				Object tValue = readSlotValue(tFrameName, tSlotName);
-				if (tValue instanceof AIFrame) {
-					if (tSlotName.equals("is-a") || tSlotName.equals("ako")) {
-						for (String tSuperName : mFrames.get(tFrameName).getSuperNames()) {
-							HashMap<String, String> tHashMap = new HashMap<>();
-							if (tMather.matching(
-									aQuestion.getFrame() + " " + aQuestion.getSlot() + " " + aQuestion.getValue(),
-									tFrameName + " " + tSlotName + " " + tSuperName, tHashMap)) {
-								tResuls.add(tHashMap);
-							}
-						}
-					} else {
-						HashMap<String, String> tHashMap = new HashMap<>();
-						if (tMather.matching(
-								aQuestion.getFrame() + " " + aQuestion.getSlot() + " " + aQuestion.getValue(),
-								tFrameName + " " + tSlotName + " " + ((AIFrame) tValue).getName(), tHashMap)) {
-							tResuls.add(tHashMap);
+		TriplePattern tPattern = new TriplePattern(aQuestion.getFrame(), aQuestion.getSlot(), aQuestion.getValue());
+		String tFrame = constant(aQuestion.getFrame());
+		String tSlot = constant(aQuestion.getSlot());
+		String tValue = constant(aQuestion.getValue());
+		// 索引に載っているスロット
+		if (tFrame != null) {
+			for (Map.Entry<String, List<String>> tEntry : mSlotIndex.getSlots(tFrame).entrySet()) {
+				if (tSlot != null && !tSlot.equals(tEntry.getKey()))
+					continue;
+				for (String tSlotValue : tEntry.getValue())
+					match(tPattern, tFrame, tEntry.getKey(), tSlotValue, tResuls);
+			}
+		} else {
+			Collection<String> tSlotNames = (tSlot != null) ? Collections.singleton(tSlot) : mSlotIndex.getSlotNames();
+			for (String tSlotName : tSlotNames) {
+				if (tValue != null) {
+					for (String tFrameName : mSlotIndex.getFrames(tSlotName, tValue))
+						match(tPattern, tFrameName, tSlotName, tValue, tResuls);
+					// 文字列は違っても Matcher で照合すると一致しうる値
+					for (Map.Entry<String, List<String>> tEntry : mSlotIndex.getIrregular(tSlotName).entrySet()) {
+						for (String tSlotValue : tEntry.getValue()) {
+							if (!tSlotValue.equals(tValue))
+								match(tPattern, tEntry.getKey(), tSlotName, tSlotValue, tResuls);
 						}
 					}
 				} else {
-					HashMap<String, String> tHashMap = new HashMap<>();
-					if (tMather.matching(aQuestion.getFrame() + " " + aQuestion.getSlot() + " " + aQuestion.getValue(),
-							tFrameName + " " + tSlotName + " " + tValue, tHashMap)) {
-						tResuls.add(tHashMap);
+					for (Map.Entry<String, Set<String>> tEntry : mSlotIndex.getValues(tSlotName).entrySet()) {
+						for (String tFrameName : tEntry.getValue())
+							match(tPattern, tFrameName, tSlotName, tEntry.getKey(), tResuls);
 					}
 				}
 			}
 		}
+		// デモン手続きで値が決まるスロットは，その都度読む
+		for (String tSlotName : mDynamicSlots) {
+			if (tSlot != null && !tSlot.equals(tSlotName))
+				continue;
+			Collection<AIFrame> tFrames = mFrames.values();
+			if (tFrame != null) {
+				AIFrame frame = mFrames.get(tFrame);
+				tFrames = (frame != null) ? Collections.singleton(frame) : Collections.<AIFrame> emptySet();
+			}
+			for (AIFrame frame : tFrames) {
+				if (frame.getSlotNames(true).contains(tSlotName)) {
+					for (String tSlotValue : slotValueStrings(frame, tSlotName))
+						match(tPattern, frame.getName(), tSlotName, tSlotValue, tResuls);
+				}
+			}
+		}
 		return tResuls;
 	}
 
 	/**
-	 * 質問をする
+	 * 質問と (フレーム, スロット, スロット値) を照合して，成功したら変数束縛情報を加える
+	 */
+	private void match(TriplePattern inPattern, String inFrameName, String inSlotName, String inSlotValue,
+			List<Map<String, String>> outResults) {
+		Map<String, String> tBinding = inPattern.match(inFrameName, inSlotName, inSlotValue);
+		if (tBinding != null) {
+			outResults.add(tBinding);
+		}
+	}
+
+	/**
+	 * 単体の質問に一致しうるスロット値の数を見積もる
+	 *
+	 * @return 見積もった数．見積もれないときは -1
+	 */
+	int estimateQuery(String inFrame, String inSlot, String inValue) {
+		String tFrame = constant(inFrame), tSlot = constant(inSlot), tValue = constant(inValue);
+		if (tSlot != null && mDynamicSlots.contains(tSlot)) {
+			return (tFrame != null) ? 1 : mFrames.size();
+		}
+		// デモン手続きのスロットはフレームごとに一つずつ読む
+		int dynamic = (tSlot != null) ? 0 : mDynamicSlots.size() * ((tFrame != null) ? 1 : mFrames.size());
+		if (tFrame != null) {
+			Map<String, List<String>> tSlots = mSlotIndex.getSlots(tFrame);
+			if (tSlot != null) {
+				List<String> tValues = tSlots.get(tSlot);
+				return (tValues == null) ? 0 : tValues.size();
+			}
+			int count = 0;
+			for (List<String> tValues : tSlots.values())
+				count += tValues.size();
+			return count + dynamic;
+		}
+		if (tSlot != null) {
+			return (tValue != null) ? mSlotIndex.count(tSlot, tValue) : mSlotIndex.count(tSlot);
+		}
+		if (tValue != null) {
+			int count = 0;
+			for (String tSlotName : mSlotIndex.getSlotNames())
+				count += mSlotIndex.count(tSlotName, tValue);
+			return count + dynamic;
+		}
+		return -1;
+	}
+
+	/**
+	 * スロットが inSlot の質問に値を代入して解いても，代入せずに解いてから結合したときと同じ解になるか<br>
+	 * ? で始まる値や空白を含む値のあるスロットと，デモン手続きで値が決まるスロットは同じにならないことがある
+	 */
+	boolean isSubstitutable(String inSlot) {
+		String tSlot = constant(inSlot);
+		if (tSlot == null)
+			return !mSlotIndex.hasIrregular() && mDynamicSlots.isEmpty();
+		return mSlotIndex.getIrregular(tSlot).isEmpty() && !mDynamicSlots.contains(tSlot);
+	}
+
+	/**
+	 * 変数なら null，定数ならそのまま返す
+	 */
+	static String constant(String inToken) {
+		return inToken.startsWith("?") ? null : inToken;
+	}
+
+	/**
+	 * 質問と照合するときのスロット値の文字列を求める<br>
+	 * is-a と ako はスーパーフレーム(再帰的)の名前，フレームはその名前，それ以外は文字列表現．
+	 */
+	List<String> slotValueStrings(AIFrame inFrame, String inSlotName) {
+		List<String> tValues = new ArrayList<>();
+		Object tValue = inFrame.readSlotValue(this, inSlotName, false);
+		if (tValue instanceof AIFrame) {
+			if (inSlotName.equals("is-a") || inSlotName.equals("ako")) {
+				for (String tName : inFrame.getSuperNames())
+					tValues.add(tName.intern());
+			} else {
+				tValues.add(((AIFrame) tValue).getName().intern());
+			}
+		} else {
+			// 質問の定数と同じ文字列を共有させ，照合を参照の比較で済ませる
+			tValues.add(String.valueOf(tValue).intern());
+		}
+		return tValues;
+	}
+
+	/**
+	 * スロット値が変わったときに AIFrame から呼ばれ，索引を更新する
+	 *
+	 * @param inFrame
+	 *            スロット値が変わったフレーム
+	 * @param inSlotName
+	 *            スロット名
+	 */
+	void slotChanged(AIFrame inFrame, String inSlotName) {
+		// コンストラクタの中など，まだ登録されていないフレーム
+		if (mFrames.get(inFrame.getName()) != inFrame)
+			return;
+		mModCount++;
+		if (inSlotName.equals(inFrame.getSuperSlotName())) {
+			// スーパーフレームが変わると，すべてのスロットが変わりうる
+			updateSuperFrames(inFrame);
+			indexFrames(inFrame.getName(), null);
+		} else {
+			indexFrames(inFrame.getName(), inSlotName);
+		}
+	}
+
+	/**
+	 * when-requested/when-read procedure が設定されたときに AIFrame から呼ばれる
+	 *
+	 * @param inSlotName
+	 *            スロット名
+	 */
+	void demonChanged(String inSlotName) {
+		if (mDynamicSlots.add(inSlotName))
+			mSlotIndex.removeSlot(inSlotName);
+		// どのフレームの値も読むたびに変わりうる
+		for (AIFrame frame : mFrames.values())
+			frame.modified();
+		mModCount++;
+	}
+
+	/**
+	 * when-requested/when-read procedure が設定されたことのあるスロット名か<br>
+	 * そのスロットの値は，getModCount が変わらなくても読むたびに変わりうる
+	 *
+	 * @param inSlotName
+	 *            スロット名
+	 * @return 設定されたことがあれば true
+	 */
+	public boolean isDynamicSlot(String inSlotName) {
+		return mDynamicSlots.contains(inSlotName);
+	}
+
+	/**
+	 * フレームやスロット値が変わった回数<br>
+	 * この値が変わっていなければ，前に読んだスロット値はそのまま使える
+	 * (when-requested/when-read procedure が返す値は除く)．
+	 *
+	 * @return 変わった回数
+	 */
+	public int getModCount() {
+		return mModCount;
+	}
+
+	/**
+	 * フレームの直接のスーパーフレームを記録し直す
+	 */
+	private void updateSuperFrames(AIFrame inFrame) {
+		String tName = inFrame.getName();
+		Set<String> tOldSupers = mSuperFrames.remove(tName);
+		if (tOldSupers != null) {
+			for (String tSuperName : tOldSupers) {
+				Set<String> tSubs = mSubFrames.get(tSuperName);
+				if (tSubs != null)
+					tSubs.remove(tName);
+			}
+		}
+		Set<String> tSupers = new HashSet<>();
+		for (Iterator<?> it = inFrame.getSupers(); it != null && it.hasNext();) {
+			Object tSuper = it.next();
+			if (!(tSuper instanceof AIFrame))
+				continue;
+			String tSuperName = ((AIFrame) tSuper).getName();
+			tSupers.add(tSuperName);
+			Set<String> tSubs = mSubFrames.get(tSuperName);
+			if (tSubs == null) {
+				tSubs = new HashSet<>();
+				mSubFrames.put(tSuperName, tSubs);
+			}
+			tSubs.add(tName);
+		}
+		mSuperFrames.put(tName, tSupers);
+	}
+
+	/**
+	 * フレームとそのサブフレーム(再帰的)の索引を作り直し，変更回数を増やす
+	 *
+	 * @param inFrameName
+	 *            フレーム名
+	 * @param inSlotName
+	 *            作り直すスロット名．null ならすべてのスロット
+	 */
+	private void indexFrames(String inFrameName, String inSlotName) {
+		Set<String> tVisited = new LinkedHashSet<>();
+		List<String> tStack = new ArrayList<>();
+		tStack.add(inFrameName);
+		while (!tStack.isEmpty()) {
+			String tName = tStack.remove(tStack.size() - 1);
+			if (!tVisited.add(tName))
+				continue;
+			AIFrame frame = mFrames.get(tName);
+			if (frame != null) {
+				frame.modified();
+				indexFrame(frame, inSlotName);
+			}
+			Set<String> tSubs = mSubFrames.get(tName);
+			if (tSubs != null)
+				tStack.addAll(tSubs);
+		}
+	}
+
+	/**
+	 * フレームの索引を作り直す
+	 */
+	private void indexFrame(AIFrame inFrame, String inSlotName) {
+		String tName = inFrame.getName();
+		Set<String> tSlotNames = inFrame.getSlotNames(true);
+		if (inSlotName == null) {
+			for (String tOld : new ArrayList<>(mSlotIndex.getSlots(tName).keySet()))
+				mSlotIndex.remove(tName, tOld);
+			for (String tSlotName : tSlotNames) {
+				if (!mDynamicSlots.contains(tSlotName))
+					mSlotIndex.put(tName, tSlotName, slotValueStrings(inFrame, tSlotName));
+			}
+		} else if (!mDynamicSlots.contains(inSlotName)) {
+			if (tSlotNames.contains(inSlotName))
+				mSlotIndex.put(tName, inSlotName, slotValueStrings(inFrame, inSlotName));
+			else
+				mSlotIndex.remove(tName, inSlotName);
+		}
+	}
+
+	/**
+	 * 質問をする<br>
+	 * 候補の少ない質問から順に解き，束縛された変数の値を次の質問に代入して問い合わせる．
 	 *
 	 * @param tQueries
 	 *            質問のリスト
@@ -319,17 +599,11 @@ public class AIFrameSystem {
 	 * @author Nishi
 	 */
 	public List<Map<String, String>> doQuery(List<Link> tQueries) {
-		List<List<Map<String, String>>> bindingsList = new ArrayList<>();
+		List<String[]> tClauses = new ArrayList<>();
 		for (Link tQuery : tQueries) {
-			List<Map<String, String>> bindings = query(tQuery);
-			if (bindings.size() != 0) {
-				bindingsList.add(bindings);
-			} else {
-				// 失敗したとき
-				return (new ArrayList<>());
-			}
+			tClauses.add(new String[] { tQuery.getFrame(), tQuery.getSlot(), tQuery.getValue() });
 		}
-		return join(bindingsList);
+		return mJoiner.doQuery(tClauses);
 	}
 
 	/**
@@ -340,29 +614,12 @@ public class AIFrameSystem {
 	 * @return 結合後の変数束縛情報のリスト
 	 */
 	public List<Map<String, String>> join(List<List<Map<String, String>>> theBindingsList) {
-		int size = theBindingsList.size();
-		switch (size) {
-		case 0:
-			// 失敗している時？
-			break;
-		case 1:
-			return theBindingsList.get(0);
-		case 2:
-			List<Map<String, String>> bindings1 = theBindingsList.get(0);
-			List<Map<String, String>> bindings2 = theBindingsList.get(1);
-			return joinBindings(bindings1, bindings2);
-		default:
-			bindings1 = theBindingsList.get(0);
-			theBindingsList.remove(bindings1);
-			bindings2 = join(theBindingsList);
-			return joinBindings(bindings1, bindings2);
-		}
-		// ダミー
-		return null;
+		return QueryJoiner.join(theBindingsList);
 	}
 
 	/**
-	 * 変数束縛情報のリストを結合する
+	 * 変数束縛情報のリストを結合する<br>
+	 * 共通する変数の値でハッシュ結合する．
 	 *
 	 * @param theBindings1
 	 *            変数束縛情報のリスト1
@@ -372,18 +629,7 @@ public class AIFrameSystem {
 	 */
 	public List<Map<String, String>> joinBindings(List<Map<String, String>> theBindings1,
 			List<Map<String, String>> theBindings2) {
-		List<Map<String, String>> resultBindings = new ArrayList<>();
-		for (int i = 0; i < theBindings1.size(); i++) {
-			Map<String, String> theBinding1 = theBindings1.get(i);
-			for (int j = 0; j < theBindings2.size(); j++) {
-				Map<String, String> theBinding2 = theBindings2.get(j);
-				Map<String, String> resultBinding = joinBinding(theBinding1, theBinding2);
-				if (resultBinding.size() != 0) {
-					resultBindings.add(resultBinding);
-				}
-			}
-		}
-		return resultBindings;
+		return QueryJoiner.joinBindings(theBindings1, theBindings2);
 	}
 
 	/**
@@ -0,0 +1,111 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * csv(RFC 4180)をレコード(行)ごとに読む<br>
+ * "で囲んだフィールドの中のカンマと改行，""(一つの")を扱う．行の区切りは CRLF でも LF でもよい．
+ * 必要なレコードだけ読んで閉じれば，残りは読まない．
+ */
+class CsvReader implements Closeable {
+	private Reader in;
+	// 読んだ文字の写し(null なら取らない)
+	private StringBuilder copy;
+	private char[] buffer = new char[8192];
+	private int position, length;
+
+	CsvReader(Reader theIn) {
+		this(theIn, null);
+	}
+
+	/**
+	 * @param theIn
+	 *            csvを読む Reader
+	 * @param theCopy
+	 *            読んだ文字をそのまま加えていく StringBuilder
+	 */
+	CsvReader(Reader theIn, StringBuilder theCopy) {
+		in = theIn;
+		copy = theCopy;
+	}
+
+	/**
+	 * 次のレコードを読む
+	 *
+	 * @return フィールドのリスト．最後まで読んだときは null
+	 * @throws IOException
+	 *             読めなかったとき
+	 */
+	List<String> readRecord() throws IOException {
+		int c = read();
+		if (c < 0) {
+			return null;
+		}
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (;; c = read()) {
+			if (quoted) {
+				if (c < 0) {
+					// 閉じていない"
+					break;
+				} else if (c == '"') {
+					if (peek() == '"') {
+						read();
+						field.append('"');
+					} else {
+						quoted = false;
+					}
+				} else {
+					field.append((char) c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\n' || c < 0) {
+				break;
+			} else if (c == '\r') {
+				if (peek() == '\n') {
+					read();
+				}
+				break;
+			} else {
+				field.append((char) c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private int read() throws IOException {
+		int c = peek();
+		if (c >= 0) {
+			position++;
+			if (copy != null) {
+				copy.append((char) c);
+			}
+		}
+		return c;
+	}
+
+	private int peek() throws IOException {
+		if (position == length) {
+			length = in.read(buffer, 0, buffer.length);
+			position = 0;
+			if (length <= 0) {
+				length = 0;
+				return -1;
+			}
+		}
+		return buffer[position];
+	}
+}
@@ -1,22 +1,36 @@
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URL;
 import java.net.URLConnection;
-import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
 /**
- * DBpediaを利用して質問に答える
+ * DBpediaを利用して質問に答える<br>
+ * 問い合わせの結果とリダイレクト先は SparqlCache に覚えておき，同じ問い合わせには問い合わせ先へ接続せずに答える．
  *
  * @author Yoshida
  */
 public class DBpedia {
 	public static final int LIMIT = 100;
+	// リソースのURLの先頭
+	static final String RESOURCE = "http://ja.dbpedia.org/resource/";
+	// SPARQLの問い合わせ先
+	static SparqlEndpoint endpoint = new HttpSparqlEndpoint("http://ja.dbpedia.org/sparql", "http://ja.dbpedia.org");
+	// 問い合わせの結果を覚えておくディレクトリ(null ならメモリだけに覚える)と，結果を使う期間(ミリ秒)
+	static File cacheDirectory = new File("DBpediaCache");
+	static long cacheTtl = 24 * 60 * 60 * 1000L;
+	// SPARQLの問い合わせ -> csv，名称 -> リダイレクト先のアドレス
+	private static SparqlCache resultCache, redirectCache;
 
 	/**
 	 * sparqlのクエリへ変換
@@ -26,29 +40,56 @@ public class DBpedia {
 	 * @return sparqlのクエリ
 	 */
 	public static String toSparqlQuery(List<Link> query) {
+		return toSparqlQuery(query, LIMIT);
+	}
+
+	/**
+	 * 結果の数の上限を指定してsparqlのクエリへ変換
+	 *
+	 * @param query
+	 *            質問のリスト
+	 * @param limit
+	 *            結果の数の上限
+	 * @return sparqlのクエリ
+	 */
+	public static String toSparqlQuery(List<Link> query, int limit) {
+		// 変数でないフレームのリダイレクト先を、まとめて一度に求める
+		List<String> names = new ArrayList<>();
+		for (Link link : query) {
+			if (!isInheritance(link.getSlot()) && !link.getFrame().startsWith("?"))
+				names.add(link.getFrame());
+		}
+		Map<String, String> redirects = pageRedirects(names);
 		String sparql = "SELECT DISTINCT * WHERE { ";
 		// それぞれのクエリに対して
 		for (Link link : query) {
 			String frame = link.getFrame(), slot = link.getSlot(), value = link.getValue();
 			// DBpediaにis-aやakoは無いのでパス
-			if (slot.equals("is-a") || slot.equals("ako"))
+			if (isInheritance(slot))
 				continue;
 			String row = "{";
 			// フレームが変数なら、そのまま。そうでないとき、URL。
-			row += (frame.startsWith("?")) ? frame + " " : "<" + pageRedirects(frame) + "> ";
+			row += (frame.startsWith("?")) ? frame + " " : "<" + redirects.get(frame) + "> ";
 			// スロットが変数なら、そのまま。そうでないとき、URL。
 			row += (slot.startsWith("?")) ? slot + " " : "<http://ja.dbpedia.org/property/" + slot + "> ";
 			if (value.startsWith("?") || isNumber(value)) {// スロット値が変数か数字
 				row += value + " }";
 			} else {// そうでないとき、"value"@jaかURL。
-				row = row + "\"" + value + "\"@ja } UNION " + row + "<http://ja.dbpedia.org/resource/" + value + "> }";
+				row = row + "\"" + value + "\"@ja } UNION " + row + "<" + RESOURCE + value + "> }";
 			}
 			sparql += row;
 		}
-		sparql += " }LIMIT " + LIMIT;// 上限を設定
+		sparql += " }LIMIT " + limit;// 上限を設定
 		return sparql;
 	}
 
+	/**
+	 * is-aかakoのスロットかどうか
+	 */
+	private static boolean isInheritance(String slot) {
+		return slot.equals("is-a") || slot.equals("ako");
+	}
+
 	/**
 	 * 文字列が数値かどうか
 	 *
@@ -73,20 +114,87 @@ public class DBpedia {
 	 * @return 変数束縛情報のリスト
 	 */
 	public static List<Map<String, String>> query(List<Link> query) {
-		String sparqlQuery = toSparqlQuery(query); // queryからSPARQLクエリへ変換
-		String format = "text/csv"; // 受け取る検索結果のフォーマットにcsvを指定
-		// SPARQL検索のURL
-		String searchURL = "";
+		return query(query, LIMIT);
+	}
+
+	/**
+	 * 結果の数の上限を指定してDBpediaへ問い合わせる<br>
+	 * 応答は読みながら変数束縛情報にし、上限に達したら残りは読まない
+	 *
+	 * @param query
+	 *            質問のリスト
+	 * @param limit
+	 *            結果の数の上限
+	 * @return 変数束縛情報のリスト。問い合わせに失敗したときは空のリスト
+	 */
+	public static List<Map<String, String>> query(List<Link> query, int limit) {
+		String sparqlQuery = toSparqlQuery(query, limit); // queryからSPARQLクエリへ変換
+		SparqlCache cache = getResultCache();
+		String cached = cache.get(sparqlQuery);
+		List<Map<String, String>> bindings;
 		try {
-			searchURL = "http://ja.dbpedia.org/sparql?default-graph-uri=http%3A%2F%2Fja.dbpedia.org&timeout=0&debug=on"
-					+ "&format=" + URLEncoder.encode(format, "UTF-8") + "&query="
-					+ URLEncoder.encode(sparqlQuery, "UTF-8");
-		} catch (UnsupportedEncodingException e) {
+			if (cached != null) {
+				bindings = csvToListOfMap(new StringReader(cached), limit);
+			} else {
+				// 読んだcsvの写しを取っておく
+				StringBuilder copy = new StringBuilder();
+				try (CsvReader csv = new CsvReader(endpoint.open(sparqlQuery), copy)) {
+					bindings = readBindings(csv, limit);// csvをマップのリストに変換
+					// 最後まで読んだときだけ覚える
+					if (csv.readRecord() == null)
+						cache.put(sparqlQuery, copy.toString());
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("DBpediaへの問い合わせに失敗しました: " + e.getMessage());
+			return new ArrayList<>();
+		}
+		// URLがあるとき、それを削除
+		for (Map<String, String> map : bindings) {
+			for (Map.Entry<String, String> e : map.entrySet())
+				e.setValue(e.getValue().replace(RESOURCE, ""));
+		}
+		return bindings;
+	}
+
+	/**
+	 * SPARQLの問い合わせ先へ問い合わせ、csv形式の結果を返す
+	 *
+	 * @param sparqlQuery
+	 *            SPARQLのクエリ
+	 * @return csv形式の結果。接続できなかったときは空文字列
+	 */
+	public static String getSparqlResult(String sparqlQuery) {
+		StringBuilder sb = new StringBuilder();
+		try (Reader in = endpoint.open(sparqlQuery)) {
+			char[] buffer = new char[4096];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+				sb.append(buffer, 0, n);
+		} catch (IOException e) {
+			System.err.println("DBpediaへの問い合わせに失敗しました: " + e.getMessage());
+			return "";
 		}
-		String result = getWebContent(searchURL, "UTF-8"); // SPARQL検索結果を得る
-		result = result.replace("\"", "")// 「"」を削除
-				.replace("http://ja.dbpedia.org/resource/", "");// URLがあるとき、それを削除
-		return csvToListOfMap(result);// csvをマップのリストに変換
+		return sb.toString();
+	}
+
+	/**
+	 * 問い合わせの結果を覚えておくキャッシュ
+	 */
+	static synchronized SparqlCache getResultCache() {
+		if (resultCache == null)
+			resultCache = new SparqlCache((cacheDirectory != null) ? new File(cacheDirectory, "query") : null,
+					cacheTtl);
+		return resultCache;
+	}
+
+	/**
+	 * リダイレクト先を覚えておくキャッシュ
+	 */
+	static synchronized SparqlCache getRedirectCache() {
+		if (redirectCache == null)
+			redirectCache = new SparqlCache((cacheDirectory != null) ? new File(cacheDirectory, "redirect") : null,
+					cacheTtl);
+		return redirectCache;
 	}
 
 	/**
@@ -97,14 +205,44 @@ public class DBpedia {
 	 * @return マップのリストへ変換
 	 */
 	public static List<Map<String, String>> csvToListOfMap(String csv) {
-		String[] lines = csv.split("\n");// 改行で分割
-		String[] vars = lines[0].split(",");// 変数をカンマで分割
+		try {
+			return csvToListOfMap(new StringReader(csv), Integer.MAX_VALUE);
+		} catch (IOException e) {
+			// 文字列からは必ず読める
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * csv形式の入力を読みながらマップのリストへ変換
+	 *
+	 * @param in
+	 *            csv形式の入力
+	 * @param limit
+	 *            変換する行の数の上限。残りの行は読まない
+	 * @return マップのリストへ変換
+	 * @throws IOException
+	 *             読めなかったとき
+	 */
+	public static List<Map<String, String>> csvToListOfMap(Reader in, int limit) throws IOException {
+		return readBindings(new CsvReader(in), limit);
+	}
+
+	/**
+	 * 1行目を変数名として、2行目から limit 行をマップにする
+	 */
+	private static List<Map<String, String>> readBindings(CsvReader csv, int limit) throws IOException {
 		List<Map<String, String>> list = new ArrayList<>();
-		for (int i = 1; i < lines.length; ++i) {
+		List<String> vars = csv.readRecord();// 変数
+		if (vars == null)
+			return list;
+		while (list.size() < limit) {
+			List<String> values = csv.readRecord();
+			if (values == null)
+				break;
 			Map<String, String> map = new HashMap<>();
-			String[] values = lines[i].split(",");
-			for (int j = 0; j < values.length; ++j)
-				map.put("?" + vars[j], values[j]);// 変数束縛情報を追加
+			for (int j = 0; j < values.size() && j < vars.size(); ++j)
+				map.put("?" + vars.get(j), values.get(j));// 変数束縛情報を追加
 			list.add(map);
 		}
 		return list;
@@ -143,26 +281,56 @@ public class DBpedia {
 	 * @return リダイレクト先のアドレス
 	 */
 	public static String pageRedirects(String name) {
-		// nameからリダイレクトするページのURL
-		String sparqlQuery = "SELECT DISTINCT * WHERE {<http://ja.dbpedia.org/resource/" + name
-				+ "> <http://dbpedia.org/ontology/wikiPageRedirects> ?x. } LIMIT " + LIMIT;
-		String format = "text/csv"; // 受け取る検索結果のフォーマットにcsvを指定
-		// SPARQL検索のURL
-		String searchURL = "";
-		try {
-			searchURL = "http://ja.dbpedia.org/sparql?default-graph-uri=http%3A%2F%2Fja.dbpedia.org&timeout=0&debug=on"
-					+ "&format=" + URLEncoder.encode(format, "UTF-8") + "&query="
-					+ URLEncoder.encode(sparqlQuery, "UTF-8");
-		} catch (UnsupportedEncodingException e) {
+		return pageRedirects(Collections.singletonList(name)).get(name);
+	}
+
+	/**
+	 * 複数の名称のリダイレクトするアドレスを求める<br>
+	 * 覚えていない名称だけを、VALUESで並べた一つの問い合わせでまとめて調べる。
+	 * リダイレクト先が無いときは、そのままのアドレスにする
+	 *
+	 * @param names
+	 *            調べたい名称
+	 * @return 名称 -> リダイレクト先のアドレス
+	 */
+	public static Map<String, String> pageRedirects(Collection<String> names) {
+		SparqlCache cache = getRedirectCache();
+		Map<String, String> addresses = new HashMap<>();
+		// 覚えていない名称 -> そのままのアドレス
+		Map<String, String> resources = new HashMap<>();
+		for (String name : new LinkedHashSet<>(names)) {
+			String address = cache.get(name);
+			if (address != null)
+				addresses.put(name, address);
+			else
+				resources.put(name, RESOURCE + name);
 		}
-		String result = getWebContent(searchURL, "UTF-8");// SPARQL検索結果を得る
-		try {
-			// 2行目を取得
-			String address = result.split("\n")[1].replace("\"", "");
-			return (address.isEmpty()) ? "http://ja.dbpedia.org/resource/" + name : address;
-		} catch (ArrayIndexOutOfBoundsException e) {
-			// 2行目が無い時(リダイレクト先がない時)
-			return "http://ja.dbpedia.org/resource/" + name;
+		if (resources.isEmpty())
+			return addresses;
+		// 名称のページからリダイレクトするページのURL
+		StringBuilder sparqlQuery = new StringBuilder("SELECT DISTINCT ?s ?x WHERE { VALUES ?s {");
+		for (String resource : resources.values())
+			sparqlQuery.append(" <").append(resource).append(">");
+		sparqlQuery.append(" } ?s <http://dbpedia.org/ontology/wikiPageRedirects> ?x. } LIMIT ")
+				.append(LIMIT * resources.size());
+		String result = getSparqlResult(sparqlQuery.toString());// SPARQL検索結果を得る
+		// 1行目は変数名。2行目からの s, x の組を取り出す
+		Map<String, String> found = new HashMap<>();
+		for (Map<String, String> binding : csvToListOfMap(result)) {
+			String resource = binding.get("?s"), address = binding.get("?x");
+			if (resource != null && address != null && !address.isEmpty() && !found.containsKey(resource))
+				found.put(resource, address);
+		}
+		for (Map.Entry<String, String> e : resources.entrySet()) {
+			String address = found.get(e.getValue());
+			// リダイレクト先がない時
+			if (address == null)
+				address = e.getValue();
+			addresses.put(e.getKey(), address);
+			// 接続できなかったときは覚えない
+			if (!result.isEmpty())
+				cache.put(e.getKey(), address);
 		}
+		return addresses;
 	}
 }
@@ -4,36 +4,49 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Pattern;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 /**
- * フレームGUIクラス
+ * フレームGUIクラス<br>
+ * 検索は別のスレッドで行い、その間も画面は操作できる。検索は中止でき、SEARCH_TIMEOUTミリ秒で打ち切る。
  *
  * @author Yoshida
  */
 public class FrameGUI extends JFrame implements ActionListener {
+	// 検索を打ち切るまでの時間(ミリ秒)
+	final static int SEARCH_TIMEOUT = 60000;
 	PaintPanel paintPanel;// 描画パネル
 	JPanel commandPanel;
 	JTextField text;// 入力エリア
-	JButton searchButton, clearButton;// 検索ボタン、クリアボタン
+	JButton searchButton, clearButton, cancelButton;// 検索ボタン、クリアボタン、中止ボタン
+	JProgressBar progressBar;// 検索中の表示
 	JTextArea infoArea;// 情報表示エリア
 	JScrollPane infoScroll;// infoAreaにスクロールバーを付ける
 	AIFrameSystem fs; // フレームシステム
 	boolean nl;// 入力が自然言語かどうか
+	SwingWorker<?, ?> search;// 実行中の検索(Search または DBpediaSearch)
+	Timer searchTimer;// 検索を打ち切るタイマー
 
 	/**
 	 * フレームGUIコンストラクタ
@@ -54,6 +67,13 @@ public class FrameGUI extends JFrame implements ActionListener {
 		searchButton.addActionListener(this);
 		clearButton = new JButton("クリア");
 		clearButton.addActionListener(this);
+		cancelButton = new JButton("中止");
+		cancelButton.addActionListener(this);
+		cancelButton.setEnabled(false);
+		progressBar = new JProgressBar();
+		progressBar.setVisible(false);
+		searchTimer = new Timer(SEARCH_TIMEOUT, this);
+		searchTimer.setRepeats(false);
 		infoArea = new JTextArea(3, 30);
 		infoArea.setEditable(false);
 		infoArea.setBackground(Color.LIGHT_GRAY);
@@ -63,6 +83,8 @@ public class FrameGUI extends JFrame implements ActionListener {
 		commandPanel.add(text);
 		commandPanel.add(searchButton);
 		commandPanel.add(clearButton);
+		commandPanel.add(cancelButton);
+		commandPanel.add(progressBar);
 
 		setLayout(new BorderLayout());
 		add(commandPanel, BorderLayout.NORTH);
@@ -78,11 +100,35 @@ public class FrameGUI extends JFrame implements ActionListener {
 	 * @return 質問のリスト
 	 */
 	public List<Link> getQuery() {
-		Pattern regex = Pattern.compile("\"(.*?)\""); // ""内を取り出す正規表現
-		java.util.regex.Matcher matcher = regex.matcher(text.getText());// 入力されたテキストを解析
+		nl = isNaturalLanguage(text.getText());
+		return getQuery(text.getText());
+	}
+
+	/**
+	 * 入力が自然言語かどうか(""で囲まれた部分が無いか)
+	 *
+	 * @param input
+	 *            入力されたテキスト
+	 * @return 自然言語のときtrue
+	 */
+	static boolean isNaturalLanguage(String input) {
+		return !QUOTED.matcher(input).find();
+	}
+
+	// ""内を取り出す正規表現
+	final static Pattern QUOTED = Pattern.compile("\"(.*?)\"");
+
+	/**
+	 * テキストから、質問を取り出す
+	 *
+	 * @param input
+	 *            入力されたテキスト
+	 * @return 質問のリスト
+	 */
+	static List<Link> getQuery(String input) {
+		java.util.regex.Matcher matcher = QUOTED.matcher(input);// 入力されたテキストを解析
 		List<Link> query = new ArrayList<>();// ""で囲まれた部分を保存するリスト
 		if (matcher.find()) {// ""で囲まれた部分があったとき
-			nl = false;
 			try {
 				do {
 					// 空白で分ける
@@ -93,29 +139,168 @@ public class FrameGUI extends JFrame implements ActionListener {
 				return new ArrayList<>();
 			}
 		} else {// ""で囲まれた部分がない時、全体を自然言語とみなす
-			nl = true;
-			query = NaturalLanguage.questionAnalysis(text.getText());
+			query = NaturalLanguage.questionAnalysis(input);
 		}
 		return query;
 	}
 
 	/**
-	 * 「検索」ボタンの動作
+	 * 「検索」ボタンの動作<br>
+	 * 実行中の検索は中止し、新しい検索を別のスレッドで始める
 	 */
 	public void searchPressed() {
-		List<Link> query = getQuery();
-		System.out.println(query);
-		if (query.isEmpty()) {
-			infoArea.setText((nl) ? "自然言語を解析できませんでした。" : "入力形式が正しくありません。");
+		if (search != null)
+			search.cancel(true);
+		nl = isNaturalLanguage(text.getText());
+		search = new Search(text.getText(), nl);
+		infoArea.setText("検索しています。");
+		cancelButton.setEnabled(true);
+		progressBar.setIndeterminate(true);
+		progressBar.setVisible(true);
+		commandPanel.revalidate();
+		searchTimer.restart();
+		search.execute();
+	}
+
+	/**
+	 * 「中止」ボタンの動作、または時間切れ<br>
+	 * 表示を戻して結果を捨てる。検索のスレッドには割り込むので、DBpediaの応答を読んでいる途中や、やり直しを待っている間なら問い合わせを止めるが、
+	 * 接続して応答を待っている間や形態素解析の途中はその場では止まらず、終わるまで裏で続く
+	 *
+	 * @param message
+	 *            情報表示エリアに表示する文字列
+	 */
+	public void cancelSearch(String message) {
+		if (search == null)
 			return;
+		search.cancel(true);
+		searchFinished(message);
+	}
+
+	/**
+	 * 検索が終わったときに表示を戻し、結果を表示する
+	 */
+	private void searchFinished(String message) {
+		searchFinished();
+		infoArea.setText(message);
+	}
+
+	/**
+	 * 検索が終わった、または中止したときに表示を戻す
+	 */
+	private void searchFinished() {
+		search = null;
+		searchTimer.stop();
+		cancelButton.setEnabled(false);
+		progressBar.setIndeterminate(false);
+		progressBar.setVisible(false);
+		commandPanel.revalidate();
+	}
+
+	/**
+	 * 変数束縛情報を表示する文字列にする
+	 */
+	static String toAnswer(boolean nl, List<Link> query, List<Map<String, String>> bindings) {
+		return (nl) ? NaturalLanguage.toNL(query, bindings) : "変数束縛情報\n" + bindings.toString();
+	}
+
+	/**
+	 * 検索中の例外を表示する文字列にする
+	 */
+	static String toError(ExecutionException e) {
+		e.getCause().printStackTrace();
+		return "検索中にエラーが発生しました。\n" + e.getCause();
+	}
+
+	/**
+	 * 別のスレッドで質問を取り出し、フレームシステムを検索する<br>
+	 * 自然言語の解析だけを別のスレッドで行い、フレームシステムは描画と同じイベントディスパッチスレッドで検索する。
+	 * フレームシステムで答えられないときは DBpediaSearch に引き継ぐ
+	 */
+	class Search extends SwingWorker<List<Link>, String> {
+		private String input;// 入力されたテキスト
+		private boolean nl;// 入力が自然言語かどうか
+
+		Search(String theInput, boolean theNl) {
+			input = theInput;
+			nl = theNl;
+		}
+
+		@Override
+		protected List<Link> doInBackground() {
+			if (nl)
+				publish("自然言語を解析しています。");
+			return getQuery(input);
+		}
+
+		@Override
+		protected void process(List<String> chunks) {
+			// 中止した検索の途中経過は表示しない
+			if (search == this && !isCancelled())
+				infoArea.setText(chunks.get(chunks.size() - 1));
+		}
+
+		@Override
+		protected void done() {
+			if (search != this || isCancelled())
+				return;
+			List<Link> query;
+			try {
+				query = get();
+			} catch (InterruptedException | CancellationException e) {
+				return;
+			} catch (ExecutionException e) {
+				searchFinished(toError(e));
+				return;
+			}
+			if (query.isEmpty()) {
+				searchFinished((nl) ? "自然言語を解析できませんでした。" : "入力形式が正しくありません。");
+				return;
+			}
+			List<Map<String, String>> bindings = fs.doQuery(query);
+			if (!bindings.isEmpty()) {
+				searchFinished(toAnswer(nl, query, bindings));
+				return;
+			}
+			// doQueryで答えられない場合、DBpediaを利用する
+			infoArea.setText("フレームシステムに答えが無いので、DBpediaに問い合わせています。");
+			search = new DBpediaSearch(query, nl);
+			search.execute();
 		}
-		List<Map<String, String>> bindings = fs.doQuery(query);
-		// doQueryで答えられない場合、DBpediaを利用する
-		if (bindings.isEmpty()) {
-			// DBpediaの利用
-			bindings = DBpedia.query(query);
+	}
+
+	/**
+	 * 別のスレッドで行うDBpediaへの問い合わせ<br>
+	 * フレームシステムには触れない
+	 */
+	class DBpediaSearch extends SwingWorker<String, Void> {
+		private List<Link> query;// 質問
+		private boolean nl;// 入力が自然言語かどうか
+
+		DBpediaSearch(List<Link> theQuery, boolean theNl) {
+			query = theQuery;
+			nl = theNl;
+		}
+
+		@Override
+		protected String doInBackground() {
+			return toAnswer(nl, query, DBpedia.query(query));
+		}
+
+		@Override
+		protected void done() {
+			if (search != this || isCancelled())
+				return;
+			String message;
+			try {
+				message = get();
+			} catch (InterruptedException | CancellationException e) {
+				return;
+			} catch (ExecutionException e) {
+				message = toError(e);
+			}
+			searchFinished(message);
 		}
-		infoArea.setText((nl) ? NaturalLanguage.toNL(query, bindings) : "変数束縛情報\n" + bindings.toString());
 	}
 
 	/**
@@ -135,12 +320,20 @@ public class FrameGUI extends JFrame implements ActionListener {
 			searchPressed();
 		} else if (obj == clearButton) {
 			clearPressed();
+		} else if (obj == cancelButton) {
+			cancelSearch("検索を中止しました。（応答を待っている問い合わせや解析は、終わるまで裏で続きます）");
+		} else if (obj == searchTimer) {
+			cancelSearch("検索が時間切れになりました。（応答を待っている問い合わせや解析は、終わるまで裏で続きます）");
 		}
 	}
 }
 
 /**
- * 描画用パネルクラス
+ * 描画用パネルクラス<br>
+ * 描いた内容はタイルごとに画像にしておき，スロット値が変わったフレームの範囲だけを描き直す．
+ * フレームの大きさや表示文字列もフレームごとに覚えておき，変わったフレームだけ求め直す．
+ * when-requested/when-read procedure のあるスロットを持つフレームは，描くたびにスロット値を読み直し，
+ * 表示文字列が変わったときだけ作り直す．
  *
  * @author Yoshida
  */
@@ -150,6 +343,7 @@ class PaintPanel extends JPanel {
 	final static int FONT_SIZE = 12;// フォントサイズ
 	final static int CHAR_WIDTH = FONT_SIZE / 2 + 1;// 文字幅
 	final static int NEXT_LINE = FONT_SIZE + 3;// 次の行までの距離
+	final static Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, FONT_SIZE);// フォント
 	// ノード名に対する座標テーブル
 	// 左上座標
 	private Map<String, Point> leftUp;
@@ -160,6 +354,14 @@ class PaintPanel extends JPanel {
 	final static int MARGIN = 10;
 	// ウィンドウサイズwidth x height
 	private int width, height;
+	// 空欄(スロット値のフレームへ矢印を描く)
+	final static String BLANK = " [   ]";
+	// フレーム名 -> 描画内容
+	private Map<String, FrameMetrics> metrics;
+	// 描画内容を作ったときのフレームシステムの変更回数
+	private int modCount;
+	// 描いた内容のタイル
+	private TileCache tiles;
 
 	/**
 	 * フレームシステム用描画パネル コンストラクタ
@@ -173,6 +375,12 @@ class PaintPanel extends JPanel {
 		this.fs = fs;
 		this.leftUp = pointTable;
 		this.rightDown = new HashMap<>();
+		this.metrics = new HashMap<>();
+		this.tiles = new TileCache(new TileCache.Painter() {
+			public void paintTile(Graphics2D g) {
+				paintFrames(g);
+			}
+		}, Color.WHITE);
 		// 描画サイズなどの決定
 		init();
 	}
@@ -261,127 +469,251 @@ class PaintPanel extends JPanel {
 	}
 
 	/**
-	 * 描画枠のサイズを決める、フレームの右下の座標を求める
+	 * 描画枠のサイズを決める、フレームの右下の座標を求める<br>
+	 * 座標テーブルを変えたときにも呼ぶ。覚えておいた描画内容とタイルは捨てる
 	 */
 	public void init() {
-		width = height = 0;
+		metrics.clear();
+		rightDown.clear();
+		tiles.invalidateAll();
+		update();
+	}
+
+	/**
+	 * スロット値か左上座標が変わったフレームだけ描画内容を作り直し、変わった範囲のタイルを捨てる
+	 */
+	private void update() {
+		modCount = fs.getModCount();
+		List<Rectangle> dirty = new ArrayList<>();
 		if (leftUp != null) {
-			// 全てのフレームに対して
+			// 変わったフレームの枠と文字列
 			for (String frameName : leftUp.keySet()) {
-				// 左上座標取得
-				Point point1 = leftUp.get(frameName);
-				int x = point1.x + CHAR_WIDTH, y = point1.y + NEXT_LINE * 2;
-				// 最大文字列幅
-				int maxStrWidth = stringWidth(frameName);
-				// 全てのスロットに対して
 				AIFrame frame = fs.getAIFrame(frameName);
-				for (String slotName : frame.getSlotNames(false)) {
-					// スロット値を取得
-					Object value = fs.readSlotValue(frameName, slotName);
-					// 表示文字列
-					String str = "";
-					// その文字列の幅
-					int strWidth = 0;
-					// AIFrameのインスタンスならば
-					if (value instanceof AIFrame) {
-						// 矢印描画先の座標が存在すれば
-						if (leftUp.containsKey(((AIFrame) value).getName())) {
-							// スロット名と空欄
-							str = slotName + " [   ]";
-							// 描画位置更新
-							y += NEXT_LINE;
-						}
-					} else {// AIFrameのインスタンスでないとき
-						// スロット名と値
-						str = slotName + " [" + value + "]";
-						// 描画位置更新
-						y += NEXT_LINE;
-					}
-					// 文字列の幅を求める
-					strWidth = stringWidth(str);
-					// 最大文字列幅を更新
-					if (maxStrWidth < strWidth)
-						maxStrWidth = strWidth;
+				Point point1 = leftUp.get(frameName);
+				FrameMetrics m = metrics.get(frameName);
+				if (m != null && m.version == frame.getModCount() && m.origin.equals(point1))
+					continue;
+				replace(frameName, measure(frameName, frame, point1), dirty);
+			}
+		}
+		rearrange(dirty);
+	}
+
+	/**
+	 * when-requested/when-read procedure のあるスロットを持つフレームのスロット値を読み直し、
+	 * 表示文字列か矢印の描画先が変わったフレームだけ作り直して、変わった範囲のタイルを捨てる
+	 *
+	 * @return 作り直したフレームがあれば true
+	 */
+	private boolean refreshDynamic() {
+		if (leftUp == null)
+			return false;
+		List<Rectangle> dirty = new ArrayList<>();
+		for (String frameName : leftUp.keySet()) {
+			FrameMetrics m = metrics.get(frameName);
+			if (m == null || !m.dynamic)
+				continue;
+			FrameMetrics fresh = measure(frameName, fs.getAIFrame(frameName), m.origin);
+			if (fresh.lines.equals(m.lines) && fresh.arrowTargets.equals(m.arrowTargets))
+				continue;
+			replace(frameName, fresh, dirty);
+		}
+		if (dirty.isEmpty())
+			return false;
+		rearrange(dirty);
+		return true;
+	}
+
+	/**
+	 * フレームの描画内容を作り直したものに替える。前の枠と矢印の範囲は dirty に加える
+	 */
+	private void replace(String frameName, FrameMetrics m, List<Rectangle> dirty) {
+		FrameMetrics old = metrics.put(frameName, m);
+		if (old != null)
+			dirty.add(old.bounds);
+		rightDown.put(frameName, m.rightDown);
+	}
+
+	/**
+	 * 作り直したフレームと、描画先が作り直された矢印の終点を求め直し、描画枠のサイズを決めて、dirty の範囲のタイルを捨てる
+	 */
+	private void rearrange(List<Rectangle> dirty) {
+		width = height = 0;
+		if (leftUp != null) {
+			for (String frameName : leftUp.keySet()) {
+				FrameMetrics m = metrics.get(frameName);
+				if (m.bounds == null || targetChanged(m)) {
+					if (m.bounds != null)
+						dirty.add(m.bounds);
+					arrange(m);
+					dirty.add(m.bounds);
 				}
-				// フレームの右下の座標を求める
-				int w = x + maxStrWidth + CHAR_WIDTH, h = y;
-				// 右下の座標を追加
-				rightDown.put(frameName, new Point(w, h));
 				// 座標の最大値を更新
-				if (width < w)
-					width = w;
-				if (height < h)
-					height = h;
+				if (width < m.rightDown.x)
+					width = m.rightDown.x;
+				if (height < m.rightDown.y)
+					height = m.rightDown.y;
 			}
 		}
 		// 余白を加える
 		width += MARGIN;
 		height += MARGIN;
 		setPreferredSize(new Dimension(width, height));
+		for (Rectangle r : dirty)
+			tiles.invalidate(r);
+	}
+
+	/**
+	 * フレームの表示文字列と右下座標、矢印の始点を求める
+	 *
+	 * @param frameName
+	 *            フレーム名
+	 * @param frame
+	 *            フレーム
+	 * @param point1
+	 *            左上座標
+	 * @return 描画内容(矢印の終点はまだ求めていない)
+	 */
+	private FrameMetrics measure(String frameName, AIFrame frame, Point point1) {
+		FrameMetrics m = new FrameMetrics();
+		m.version = frame.getModCount();
+		m.origin = new Point(point1);
+		int x = point1.x + CHAR_WIDTH, y = point1.y + NEXT_LINE * 2;
+		// 最大文字列幅
+		int maxStrWidth = stringWidth(frameName);
+		// 全てのスロットに対して
+		for (String slotName : frame.getSlotNames(false)) {
+			// デモン手続きで値が決まるスロットは、描くたびに読み直す
+			if (fs.isDynamicSlot(slotName))
+				m.dynamic = true;
+			// スロット値を取得
+			Object value = fs.readSlotValue(frameName, slotName);
+			// 表示文字列
+			String str;
+			// AIFrameのインスタンスならば
+			if (value instanceof AIFrame) {
+				String name = ((AIFrame) value).getName();
+				// 矢印描画先の座標が存在しなければ表示しない
+				if (!leftUp.containsKey(name))
+					continue;
+				// スロット名と空欄
+				str = slotName + BLANK;
+				// 矢印の始点
+				m.arrowLines.add(m.lines.size());
+				m.arrowStarts.add(new Point(x + stringWidth(slotName) + stringWidth(BLANK) / 2, y - FONT_SIZE / 2));
+				m.arrowTargets.add(name);
+			} else {// AIFrameのインスタンスでないとき
+				// スロット名と値
+				str = slotName + " [" + value + "]";
+			}
+			m.lines.add(str);
+			// 描画位置更新
+			y += NEXT_LINE;
+			// 最大文字列幅を更新
+			maxStrWidth = Math.max(maxStrWidth, stringWidth(str));
+		}
+		// フレームの右下の座標
+		m.rightDown = new Point(x + maxStrWidth + CHAR_WIDTH, y);
+		return m;
+	}
+
+	/**
+	 * 矢印の描画先のフレームが作り直されたかどうか
+	 */
+	private boolean targetChanged(FrameMetrics m) {
+		for (int i = 0; i < m.arrowTargets.size(); i++) {
+			if (metrics.get(m.arrowTargets.get(i)) != m.arrowTargetMetrics[i])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 矢印の終点と、枠と矢印を囲む矩形を求める
+	 */
+	private void arrange(FrameMetrics m) {
+		int arrows = m.arrowTargets.size();
+		m.arrowEnds = new Point[arrows];
+		m.arrowTargetMetrics = new FrameMetrics[arrows];
+		// 枠を囲む矩形(文字の幅は見積もりなので、はみ出す分を見込む)
+		m.bounds = new Rectangle(m.origin.x, m.origin.y, m.rightDown.x - m.origin.x + 1, m.rightDown.y - m.origin.y
+				+ 1);
+		m.bounds.grow(FONT_SIZE, FONT_SIZE);
+		int head = (int) HEAD_SIZE + 1;
+		for (int i = 0; i < arrows; i++) {
+			String target = m.arrowTargets.get(i);
+			m.arrowTargetMetrics[i] = metrics.get(target);
+			// 描画先が座標テーブルから消えたときは描かない
+			if (m.arrowTargetMetrics[i] == null)
+				continue;
+			Point start = m.arrowStarts.get(i);
+			m.arrowEnds[i] = crossPoint(target, start);
+			Rectangle r = new Rectangle(start);
+			r.add(m.arrowEnds[i]);
+			r.grow(head, head);
+			m.bounds.add(r);
+		}
 	}
 
 	/**
-	 * 描画メソッド
+	 * 描画メソッド<br>
+	 * クリップに重なるタイルの画像を写す。フレームシステムが変わっていたら、変わったフレームの描画内容を作り直す
 	 */
 	@Override
 	public void paintComponent(Graphics g) {
+		if (fs.getModCount() != modCount) {
+			update();
+			revalidate();
+		} else if (refreshDynamic()) {
+			revalidate();
+		}
+		tiles.paint(g, getWidth(), getHeight());
+	}
+
+	/**
+	 * クリップに重なるフレームだけを、覚えておいた描画内容で描く
+	 *
+	 * @param g
+	 *            対象のGraphicsオブジェクト(白で覆ってある)
+	 */
+	private void paintFrames(Graphics g) {
 		// フォント設定
-		g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, FONT_SIZE));
-		// 白で覆う
-		g.setColor(Color.WHITE);
-		g.fillRect(0, 0, getWidth(), getHeight());
+		g.setFont(FONT);
+		Rectangle clip = g.getClipBounds();
 		if (leftUp != null) {
 			// 全てのフレームに対して
 			for (String frameName : leftUp.keySet()) {
-				// 座標取得
-				Point point1 = leftUp.get(frameName);
+				FrameMetrics m = metrics.get(frameName);
+				// クリップに重ならないフレームは描かない
+				if (m == null || (clip != null && !clip.intersects(m.bounds)))
+					continue;
 				// 描画座標
-				int x = point1.x + CHAR_WIDTH, y = point1.y + NEXT_LINE;
+				int x = m.origin.x + CHAR_WIDTH, y = m.origin.y + NEXT_LINE;
 				// フレーム名描画
 				g.setColor(Color.BLACK);
 				g.drawString(frameName, x, y);
 				y += NEXT_LINE;
 				// 全てのスロットに対して
-				AIFrame frame = fs.getAIFrame(frameName);
-				for (String slotName : frame.getSlotNames(false)) {
-					// スロット値を取得
-					Object value = fs.readSlotValue(frameName, slotName);
+				int arrow = 0;
+				for (int i = 0; i < m.lines.size(); i++) {
+					// スロット名と値(または空欄)を表示
 					g.setColor(Color.BLUE);
-					// 表示文字列
-					String str = "";
-					// AIFrameのインスタンスならば
-					if (value instanceof AIFrame) {
-						String name = ((AIFrame) value).getName();
-						// 矢印描画先の座標が存在すれば
-						if (leftUp.containsKey(name)) {
-							String blank = " [   ]";
-							// スロット名と空欄表示
-							str = slotName + blank;
-							g.drawString(str, x, y);
-							// 始点
-							Point start = new Point(x + stringWidth(slotName) + stringWidth(blank) / 2,
-									y - FONT_SIZE / 2);
-							// 終点
-							Point end = crossPoint(name, start);
-							// 矢印を描画
+					g.drawString(m.lines.get(i), x, y);
+					// 空欄から矢印を描画
+					if (arrow < m.arrowLines.size() && m.arrowLines.get(arrow) == i) {
+						Point start = m.arrowStarts.get(arrow), end = m.arrowEnds[arrow];
+						if (end != null) {
 							g.setColor(Color.RED);
 							drawArrow(g, start.x, start.y, end.x, end.y);
-							// 描画位置更新
-							y += NEXT_LINE;
 						}
-					} else {// AIFrameのインスタンスでないとき
-						// スロット名と値を表示
-						str = slotName + " [" + value + "]";
-						g.drawString(str, x, y);
-						// 描画位置更新
-						y += NEXT_LINE;
+						arrow++;
 					}
+					// 描画位置更新
+					y += NEXT_LINE;
 				}
-				// フレームの右下座標取得
-				Point point2 = rightDown.get(frameName);
 				// フレームの枠を描画
 				g.setColor(Color.GRAY);
-				g.drawRect(point1.x, point1.y, point2.x - point1.x, point2.y - point1.y);
+				g.drawRect(m.origin.x, m.origin.y, m.rightDown.x - m.origin.x, m.rightDown.y - m.origin.y);
 			}
 		}
 	}
@@ -395,11 +727,36 @@ class PaintPanel extends JPanel {
 	 */
 	private static int stringWidth(String str) {
 		int count = 0;
-		for (char ch : str.toCharArray()) {
-			String temp = ch + "";
-			// 1バイト文字なら1文字分、そうでないときは2文字分
-			count += (temp.getBytes().length == 1) ? 1 : 2;
+		for (int i = 0; i < str.length(); i++) {
+			char ch = str.charAt(i);
+			// 半角(ASCIIと半角カナ)なら1文字分、そうでないときは2文字分
+			count += (ch < 0x80 || ('\uff61' <= ch && ch <= '\uff9f')) ? 1 : 2;
 		}
 		return count * CHAR_WIDTH;
 	}
+
+	/**
+	 * フレームの描画内容<br>
+	 * フレームのスロット値か左上座標が変わるまで使い回す
+	 */
+	private static class FrameMetrics {
+		// 求めたときのフレームの変更回数と左上座標
+		int version;
+		Point origin;
+		// デモン手続きで値が決まるスロットがあるか(あれば描くたびに読み直す)
+		boolean dynamic;
+		// 右下座標
+		Point rightDown;
+		// スロットごとの表示文字列
+		List<String> lines = new ArrayList<>();
+		// 矢印の出る表示文字列の番号、始点、描画先のフレーム名
+		List<Integer> arrowLines = new ArrayList<>();
+		List<Point> arrowStarts = new ArrayList<>();
+		List<String> arrowTargets = new ArrayList<>();
+		// 矢印の終点と、終点を求めたときの描画先の描画内容
+		Point[] arrowEnds;
+		FrameMetrics[] arrowTargetMetrics;
+		// 枠と矢印を囲む矩形
+		Rectangle bounds;
+	}
 }
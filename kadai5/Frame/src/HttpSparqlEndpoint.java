@@ -0,0 +1,177 @@
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+
+/**
+ * HTTPで問い合わせるSPARQLの問い合わせ先<br>
+ * 応答を最後まで読んで閉じれば，接続はkeep-aliveで次の問い合わせに使い回される．
+ * 一回の問い合わせには(応答を読み終えるまで) deadline ミリ秒までしかかけない．
+ * 応答を読み始める前に接続できないときや問い合わせ先が混んでいるとき(5xx, 429)は，間隔を倍にしながら maxRetries 回までやり直す．
+ */
+public class HttpSparqlEndpoint implements SparqlEndpoint {
+	private String url;
+	private String defaultGraph;
+	// 接続と読み込みの時間切れ，一回の問い合わせ全体の時間切れ(ミリ秒)
+	private int connectTimeout = 5000;
+	private int readTimeout = 20000;
+	private long deadline = 30000;
+	// やり直す回数と，最初のやり直しまでの間隔(ミリ秒)
+	private int maxRetries = 2;
+	private long backoff = 500;
+
+	/**
+	 * @param theUrl
+	 *            問い合わせ先のURL
+	 * @param theDefaultGraph
+	 *            既定のグラフのURI(null なら指定しない)
+	 */
+	public HttpSparqlEndpoint(String theUrl, String theDefaultGraph) {
+		url = theUrl;
+		defaultGraph = theDefaultGraph;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public void setTimeouts(int theConnectTimeout, int theReadTimeout, long theDeadline) {
+		connectTimeout = theConnectTimeout;
+		readTimeout = theReadTimeout;
+		deadline = theDeadline;
+	}
+
+	public void setRetries(int theMaxRetries, long theBackoff) {
+		maxRetries = theMaxRetries;
+		backoff = theBackoff;
+	}
+
+	@Override
+	public Reader open(String sparqlQuery) throws IOException {
+		String searchURL = searchURL(sparqlQuery);
+		long end = System.currentTimeMillis() + deadline;
+		long wait = backoff;
+		for (int retry = 0;; retry++) {
+			try {
+				return get(searchURL, end);
+			} catch (RetryableException e) {
+				long left = end - System.currentTimeMillis();
+				if (retry >= maxRetries || left <= wait) {
+					throw e;
+				}
+			}
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("問い合わせが中断されました");
+			}
+			wait *= 2;
+		}
+	}
+
+	/**
+	 * 問い合わせのURL
+	 */
+	private String searchURL(String sparqlQuery) throws UnsupportedEncodingException {
+		StringBuilder sb = new StringBuilder(url);
+		sb.append(url.indexOf('?') < 0 ? '?' : '&');
+		if (defaultGraph != null)
+			sb.append("default-graph-uri=").append(URLEncoder.encode(defaultGraph, "UTF-8")).append('&');
+		// 受け取る検索結果のフォーマットにcsvを指定
+		sb.append("timeout=0&debug=on&format=").append(URLEncoder.encode("text/csv", "UTF-8"));
+		sb.append("&query=").append(URLEncoder.encode(sparqlQuery, "UTF-8"));
+		return sb.toString();
+	}
+
+	/**
+	 * 一回問い合わせる
+	 *
+	 * @param end
+	 *            時間切れにする時刻
+	 * @return 応答を読む Reader
+	 */
+	private Reader get(String searchURL, final long end) throws IOException {
+		int left = (int) Math.min(Integer.MAX_VALUE, end - System.currentTimeMillis());
+		if (left <= 0)
+			throw new IOException("問い合わせが時間切れになりました: " + url);
+		HttpURLConnection conn = (HttpURLConnection) new URL(searchURL).openConnection();
+		conn.setConnectTimeout(Math.min(connectTimeout, left));
+		conn.setReadTimeout(Math.min(readTimeout, left));
+		int status;
+		try {
+			status = conn.getResponseCode();
+		} catch (IOException e) {
+			// 接続できない、時間切れ
+			throw new RetryableException(e.toString());
+		}
+		if (status != HttpURLConnection.HTTP_OK) {
+			// 接続を使い回せるように、エラーの応答も読み捨てる
+			discard(conn.getErrorStream());
+			String message = "問い合わせ先が " + status + " を返しました: " + url;
+			if (status >= 500 || status == 429)
+				throw new RetryableException(message);
+			throw new IOException(message);
+		}
+		InputStream in;
+		try {
+			in = conn.getInputStream();
+		} catch (IOException e) {
+			throw new RetryableException(e.toString());
+		}
+		// 読んでいる途中で時間切れになるか，読んでいるスレッドが中断されたら止める
+		return new FilterReader(new InputStreamReader(in, "UTF-8")) {
+			@Override
+			public int read() throws IOException {
+				check();
+				return super.read();
+			}
+
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				check();
+				return super.read(cbuf, off, len);
+			}
+
+			private void check() throws IOException {
+				if (System.currentTimeMillis() > end)
+					throw new IOException("問い合わせが時間切れになりました: " + url);
+				if (Thread.currentThread().isInterrupted())
+					throw new IOException("問い合わせが中断されました");
+			}
+		};
+	}
+
+	private static void discard(InputStream in) {
+		if (in == null)
+			return;
+		try {
+			byte[] buffer = new byte[4096];
+			while (in.read(buffer) >= 0) {
+			}
+		} catch (IOException e) {
+			// 読み切れなくても接続を使い回せないだけなので，問い合わせの失敗としては扱わない
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * やり直せば成功するかもしれない失敗
+	 */
+	private static class RetryableException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		RetryableException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,336 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 形態素解析器MeCabのプロセスを複数立ち上げておき，解析のたびに一つを貸し出すプール<br>
+ * 一つのプロセスは一度に一つの解析だけに使うので，複数のスレッドから同時に解析できる．
+ * 貸し出す前にプロセスが終了していないか調べ，終了していたり入出力に失敗したりしたプロセスは起動し直す．
+ * 空くのを待てる解析の数には上限があり，超えた分や待ちきれなかった分は解析しない．
+ * analyzeAll は複数の文をプロセスごとに一つ立てておいた送信用のスレッドから続けて送り，EOS で区切られた結果を順に受け取る．
+ */
+class MeCabPool {
+	// 空いたプロセスを待つ時間(ミリ秒)
+	static final long WAIT_MILLIS = 10000;
+	// analyzeAll の途中でプロセスが終了したときに，起動し直して続ける回数
+	static final int MAX_RESTARTS = 3;
+	// analyzeAll で文を送るスレッド．close し忘れても終了を妨げないようにデーモンにする
+	private static final ThreadFactory WRITER_THREADS = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "MeCab writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	};
+
+	private String command;
+	private String encoding;
+	// すべてのプロセスと，空いているプロセス
+	private List<Worker> workers = new ArrayList<>();
+	private BlockingQueue<Worker> idle;
+	// 実行中と待っている解析の数の上限
+	private Semaphore admission;
+
+	/**
+	 * プロセスはまだ起動せず，初めて使うときに起動する
+	 *
+	 * @param theCommand
+	 *            MeCabのコマンド
+	 * @param theEncoding
+	 *            MeCabの入出力の文字コード
+	 * @param theSize
+	 *            プロセスの数
+	 * @param theMaxWaiting
+	 *            プロセスが空くのを待てる解析の数
+	 */
+	MeCabPool(String theCommand, String theEncoding, int theSize, int theMaxWaiting) {
+		command = theCommand;
+		encoding = theEncoding;
+		int size = Math.max(1, theSize);
+		idle = new ArrayBlockingQueue<>(size);
+		for (int i = 0; i < size; i++) {
+			Worker worker = new Worker();
+			workers.add(worker);
+			idle.add(worker);
+		}
+		admission = new Semaphore(size + Math.max(0, theMaxWaiting));
+	}
+
+	/**
+	 * 一文を形態素解析する
+	 *
+	 * @param sentence
+	 *            文(改行は空白にする)
+	 * @return MeCabの出力のEOSの手前までの行．解析できなかったときは null
+	 */
+	List<String> analyze(String sentence) {
+		if (!admission.tryAcquire()) {
+			System.err.println("形態素解析を待っている文が多すぎるため，解析しませんでした");
+			return null;
+		}
+		try {
+			Worker worker = idle.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			if (worker == null) {
+				System.err.println("形態素解析器MeCabが空くのを待ちきれませんでした");
+				return null;
+			}
+			try {
+				return worker.analyze(sentence);
+			} finally {
+				idle.add(worker);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			admission.release();
+		}
+	}
+
+	/**
+	 * 複数の文をまとめて形態素解析する<br>
+	 * 一つのプロセスに，結果を待たずに文を続けて送る．複数のスレッドから呼べば別のプロセスで並列に解析する．
+	 * 途中でプロセスが終了したときは，そのとき解析していた文を飛ばして残りを続ける
+	 *
+	 * @param sentences
+	 *            文のリスト(改行は空白にする)
+	 * @return 文ごとの MeCab の出力の EOS の手前までの行．解析できなかった文は null
+	 */
+	List<List<String>> analyzeAll(List<String> sentences) {
+		if (!admission.tryAcquire()) {
+			System.err.println("形態素解析を待っている文が多すぎるため，解析しませんでした");
+			return nulls(new ArrayList<List<String>>(), sentences.size());
+		}
+		try {
+			Worker worker = idle.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			if (worker == null) {
+				System.err.println("形態素解析器MeCabが空くのを待ちきれませんでした");
+				return nulls(new ArrayList<List<String>>(), sentences.size());
+			}
+			try {
+				return worker.analyzeAll(sentences);
+			} finally {
+				idle.add(worker);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return nulls(new ArrayList<List<String>>(), sentences.size());
+		} finally {
+			admission.release();
+		}
+	}
+
+	/**
+	 * 結果が size 個になるまで null を加える
+	 */
+	private static List<List<String>> nulls(List<List<String>> results, int size) {
+		while (results.size() < size) {
+			results.add(null);
+		}
+		return results;
+	}
+
+	/**
+	 * 一行が一文なので，改行があると結果がずれる
+	 */
+	private static String line(String sentence) {
+		return sentence.replace('\r', ' ').replace('\n', ' ');
+	}
+
+	/**
+	 * すべてのプロセスと送信用のスレッドを終了する．次に使うときは起動し直す
+	 */
+	void close() {
+		for (Worker worker : workers) {
+			synchronized (worker) {
+				worker.stop();
+				worker.stopWriter();
+			}
+		}
+	}
+
+	/**
+	 * MeCabのプロセス一つ
+	 */
+	private class Worker {
+		private Process process;
+		private PrintWriter out;
+		private BufferedReader in;
+		// analyzeAll で文を送るスレッド(初めて使うときに立て，解析のたびに使い回す)
+		private ExecutorService writerThread;
+
+		synchronized List<String> analyze(String sentence) {
+			if (!isAlive() && !start()) {
+				return null;
+			}
+			out.println(line(sentence)); // MeCabに文字列を送る
+			out.flush();
+			if (out.checkError()) {
+				System.err.println("MeCabに文字列を送れませんでした");
+				stop();
+				return null;
+			}
+			List<String> lines = new ArrayList<>();
+			try {
+				for (String line = in.readLine(); line != null; line = in.readLine()) {
+					// mecabから結果を受け取る
+					if (line.equals("EOS")) {
+						return lines;
+					}
+					lines.add(line);
+				}
+				System.err.println("MeCabが途中で終了しました");
+			} catch (IOException e) {
+				System.err.println("MeCabから形態素解析結果を受け取る際にIOExceptionが発生しました");
+				e.printStackTrace();
+			}
+			stop();
+			return null;
+		}
+
+		synchronized List<List<String>> analyzeAll(List<String> sentences) {
+			List<List<String>> results = new ArrayList<>(sentences.size());
+			for (int restarts = 0; results.size() < sentences.size(); restarts++) {
+				if (!isAlive() && !start()) {
+					break;
+				}
+				if (pipeline(sentences.subList(results.size(), sentences.size()), results)) {
+					break;
+				}
+				// 解析していた文は飛ばす
+				results.add(null);
+				if (restarts == MAX_RESTARTS || Thread.currentThread().isInterrupted()) {
+					break;
+				}
+			}
+			return nulls(results, sentences.size());
+		}
+
+		/**
+		 * 文を別のスレッドから送りながら，結果を results に加えていく
+		 *
+		 * @return すべての文の結果を受け取れたら true．失敗したときはプロセスを終了して false
+		 */
+		private boolean pipeline(final List<String> sentences, List<List<String>> results) {
+			int goal = results.size() + sentences.size();
+			// 結果を読んでいる間に，送信用のスレッドから文を送る
+			if (writerThread == null) {
+				writerThread = Executors.newSingleThreadExecutor(WRITER_THREADS);
+			}
+			final Process writing = process;
+			final PrintWriter writer = out;
+			Future<?> sending = writerThread.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (String sentence : sentences) {
+						writer.println(line(sentence));
+					}
+					writer.flush();
+					if (writer.checkError()) {
+						System.err.println("MeCabに文字列を送れませんでした");
+						// 読む側を止める
+						writing.destroy();
+					}
+				}
+			});
+			boolean failed = true;
+			try {
+				List<String> lines = new ArrayList<>();
+				while (results.size() < goal) {
+					String line = in.readLine();
+					if (line == null) {
+						System.err.println("MeCabが途中で終了しました");
+						break;
+					}
+					if (line.equals("EOS")) {
+						results.add(lines);
+						lines = new ArrayList<>();
+					} else {
+						lines.add(line);
+					}
+				}
+				failed = results.size() < goal;
+			} catch (IOException e) {
+				System.err.println("MeCabから形態素解析結果を受け取る際にIOExceptionが発生しました");
+				e.printStackTrace();
+			}
+			if (failed) {
+				stop();
+			}
+			// 送り終わるまで，次の解析にプロセスを渡さない．
+			// 失敗したときはプロセスを終了してあるので，書き込みで止まっていた送信用のスレッドも抜ける
+			try {
+				sending.get();
+			} catch (InterruptedException e) {
+				stop();
+				failed = true;
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				System.err.println("MeCabに文字列を送る際に例外が発生しました");
+				e.getCause().printStackTrace();
+				stop();
+				failed = true;
+			}
+			return !failed;
+		}
+
+		/**
+		 * プロセスが動いているかどうか
+		 */
+		private boolean isAlive() {
+			if (process == null) {
+				return false;
+			}
+			try {
+				process.exitValue();
+				return false;
+			} catch (IllegalThreadStateException e) {
+				return true;
+			}
+		}
+
+		private boolean start() {
+			stop();
+			try {
+				process = Runtime.getRuntime().exec(command);
+				out = new PrintWriter(new OutputStreamWriter(process.getOutputStream(), encoding));
+				in = new BufferedReader(new InputStreamReader(process.getInputStream(), encoding));
+				return true;
+			} catch (IOException e) {
+				System.err.println("形態素解析器MeCabを起動できませんでした");
+				process = null;
+				return false;
+			}
+		}
+
+		void stop() {
+			if (process != null) {
+				process.destroy();
+				process = null;
+				out = null;
+				in = null;
+			}
+		}
+
+		void stopWriter() {
+			if (writerThread != null) {
+				writerThread.shutdown();
+				writerThread = null;
+			}
+		}
+	}
+}
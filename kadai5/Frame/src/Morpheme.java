@@ -1,9 +1,5 @@
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 形態素クラス
@@ -35,11 +31,12 @@ public class Morpheme {
 	String pron;
 
 	String mecabLine;
-	static Process mecabPrc;
-	static PrintWriter mecabOut;
-	static BufferedReader mecabIn;
 	static String mecabCmd = "/opt/cse/bin/mecab";
 	static String encoding = "EUC-JP";
+	// MeCabのプロセスの数と，プロセスが空くのを待てる文の数
+	static int mecabWorkers = Runtime.getRuntime().availableProcessors();
+	static int mecabMaxWaiting = 64;
+	private static MeCabPool mecabPool;
 
 	/**
 	 * コンストラクタ
@@ -72,43 +69,47 @@ public class Morpheme {
 	}
 
 	/**
-	 * 形態素解析の結果をMorphemeオブジェクトのリストにして返す
+	 * 形態素解析の結果をMorphemeオブジェクトのリストにして返す<br>
+	 * 複数のスレッドから同時に呼んでよい．解析できなかったときは空のリストを返す
 	 */
 	static ArrayList<Morpheme> analyzeMorpheme(String str) {
-		if (mecabPrc == null) {
-			startMeCab();
-		}
-		mecabOut.println(str); // MeCabに文字列を送る
-		mecabOut.flush();
 		ArrayList<Morpheme> morphs = new ArrayList<Morpheme>();
-		try {
-			for (String line = mecabIn.readLine(); line != null; line = mecabIn.readLine()) {
-				// mecabから結果を受け取る
-				if (line.equals("EOS")) {
-					break;
-				} else {
+		List<String> lines = getMeCabPool().analyze(str);
+		if (lines != null) {
+			for (String line : lines) {
+				morphs.add(new Morpheme(line));
+			}
+		}
+		return morphs;
+	}
+
+	/**
+	 * 複数の文をまとめて形態素解析し，文ごとのMorphemeオブジェクトのリストにして返す<br>
+	 * 文を一つずつ結果を待たずにMeCabへ送るので，analyzeMorphemeを繰り返すより速い．
+	 * 解析できなかった文は空のリストになる
+	 */
+	static List<ArrayList<Morpheme>> analyzeMorphemes(List<String> strs) {
+		List<ArrayList<Morpheme>> results = new ArrayList<ArrayList<Morpheme>>();
+		for (List<String> lines : getMeCabPool().analyzeAll(strs)) {
+			ArrayList<Morpheme> morphs = new ArrayList<Morpheme>();
+			if (lines != null) {
+				for (String line : lines) {
 					morphs.add(new Morpheme(line));
 				}
 			}
-		} catch (IOException e) {
-			System.err.println("MeCabから形態素解析結果を受け取る際にIOExceptionが発生しました");
-			e.printStackTrace();
+			results.add(morphs);
 		}
-		return morphs;
+		return results;
 	}
 
 	/**
-	 * 形態素解析器MeCabを開始する
+	 * 形態素解析器MeCabのプロセスのプールを返す．初めて呼ばれたときに作る
 	 */
-	static void startMeCab() {
-		try {
-			mecabPrc = Runtime.getRuntime().exec(mecabCmd);
-			mecabOut = new PrintWriter(new OutputStreamWriter(mecabPrc.getOutputStream(), encoding));
-			mecabIn = new BufferedReader(new InputStreamReader(mecabPrc.getInputStream(), encoding));
-		} catch (IOException e) {
-			System.err.println("形態素解析器MeCabを起動できませんでした");
-			System.exit(-1);
+	static synchronized MeCabPool getMeCabPool() {
+		if (mecabPool == null) {
+			mecabPool = new MeCabPool(mecabCmd, encoding, mecabWorkers, mecabMaxWaiting);
 		}
+		return mecabPool;
 	}
 
 	/**
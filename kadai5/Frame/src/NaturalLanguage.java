@@ -1,7 +1,10 @@
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * 自然言語処理に関連するクラス
@@ -13,22 +16,146 @@ public class NaturalLanguage {
 	public static final String NAME = "?name";
 	public static final String VALUE = "?value";
 
+	// 覚えておく質問文の数
+	static final int CACHE_SIZE = 512;
+	// 正規化した質問文 -> 質問のリスト(使った順)
+	private static final Map<String, List<Link>> cache = new LinkedHashMap<String, List<Link>>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<Link>> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	// 覚えていた回数と，解析した回数
+	private static final AtomicLong cacheHits = new AtomicLong();
+	private static final AtomicLong cacheMisses = new AtomicLong();
+	// 続いた空白
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+
 	/**
 	 * 自然言語の質問文から聞いていることを取り出す<br>
 	 * 例:<br>
 	 * "nameのslotは何ですか?" -> return [(name, slot, ?value)]<br>
 	 * "slotがvalueなものは何?" -> return [(?name, slot, value)] <br>
 	 * "slot1がvalue1で、slot2がvalue2なclassは何?" -> return <br>
-	 * [(?name, slot1, value1), (?name, slot2, value2), (?name, is-a, class)]
+	 * [(?name, slot1, value1), (?name, slot2, value2), (?name, is-a, class)]<br>
+	 * 最近解析した質問文(空白の違いは無視する)は覚えておいた結果を返す
 	 *
 	 * @param question
 	 *            自然言語の質問文
 	 * @return 質問のリスト
 	 */
 	public static List<Link> questionAnalysis(String question) {
+		String key = normalize(question);
+		List<Link> query = lookup(key);
+		if (query == null) {
+			// 形態素解析
+			List<Morpheme> morphemes = Morpheme.analyzeMorpheme(key);
+			query = analyzeQuestion(morphemes);
+			store(key, morphemes, query);
+		}
+		return query;
+	}
+
+	/**
+	 * 複数の自然言語の質問文から聞いていることを取り出す<br>
+	 * 形態素解析はまとめて行う
+	 *
+	 * @param questions
+	 *            自然言語の質問文のリスト
+	 * @return 質問文ごとの質問のリスト
+	 */
+	public static List<List<Link>> questionAnalysis(List<String> questions) {
+		List<List<Link>> queries = new ArrayList<>();
+		// 覚えていない質問文だけをまとめて解析する
+		List<Integer> misses = new ArrayList<>();
+		List<String> keys = new ArrayList<>();
+		for (String question : questions) {
+			String key = normalize(question);
+			List<Link> query = lookup(key);
+			if (query == null) {
+				misses.add(queries.size());
+				keys.add(key);
+			}
+			queries.add(query);
+		}
+		if (!keys.isEmpty()) {
+			List<ArrayList<Morpheme>> results = Morpheme.analyzeMorphemes(keys);
+			for (int i = 0; i < keys.size(); i++) {
+				List<Link> query = analyzeQuestion(results.get(i));
+				store(keys.get(i), results.get(i), query);
+				queries.set(misses.get(i), query);
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * 質問文を覚えておくための形にする．前後の空白を除き，続いた空白(全角も含む)を一つの半角空白にする
+	 */
+	static String normalize(String question) {
+		return SPACES.matcher(question.replace('\u3000', ' ').trim()).replaceAll(" ");
+	}
+
+	/**
+	 * 覚えておいた質問のリストの写しを返す．覚えていなければ null
+	 */
+	private static List<Link> lookup(String key) {
+		List<Link> query;
+		synchronized (cache) {
+			query = cache.get(key);
+		}
+		if (query == null) {
+			cacheMisses.incrementAndGet();
+			return null;
+		}
+		cacheHits.incrementAndGet();
+		return new ArrayList<>(query);
+	}
+
+	/**
+	 * 解析した結果を覚えておく．形態素解析できなかったときは覚えない
+	 */
+	private static void store(String key, List<Morpheme> morphemes, List<Link> query) {
+		if (morphemes.isEmpty()) {
+			return;
+		}
+		synchronized (cache) {
+			cache.put(key, new ArrayList<>(query));
+		}
+	}
+
+	/**
+	 * 覚えておいた結果を返した回数
+	 */
+	public static long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * 覚えておらず解析した回数
+	 */
+	public static long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	/**
+	 * 覚えておいた結果をすべて捨てる
+	 */
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * 形態素解析した質問文から聞いていることを取り出す
+	 *
+	 * @param morphemes
+	 *            質問文の形態素のリスト
+	 * @return 質問のリスト
+	 */
+	private static List<Link> analyzeQuestion(List<Morpheme> morphemes) {
 		List<Link> query = new ArrayList<>();
-		// 形態素解析
-		List<Morpheme> morphemes = Morpheme.analyzeMorpheme(question);
 		for (Iterator<Morpheme> it = morphemes.iterator(); it.hasNext();) {
 			// 形態素
 			Morpheme morph = it.next();
@@ -0,0 +1,405 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 変数束縛情報の結合を行うクラス<br>
+ * 二重ループで全ての組を試す代わりに，共通する変数の値でハッシュ表を作って結合する．
+ * 質問のリストを解くときは候補の少ない質問から順に解き，
+ * それまでに束縛された変数の値を次の質問に代入してから問い合わせる．
+ */
+class QueryJoiner {
+
+	/**
+	 * 単体の質問の問い合わせ先
+	 */
+	interface Source {
+		/**
+		 * 単体の質問をする
+		 *
+		 * @param theTerms
+		 *            質問の各項(? で始まるものは変数)
+		 * @return 変数束縛情報のリスト
+		 */
+		List<Map<String, String>> query(String[] theTerms);
+
+		/**
+		 * 質問に一致しうるスロット値の数を見積もる
+		 *
+		 * @param theTerms
+		 *            質問の各項(? で始まるものは変数)
+		 * @return 見積もった数．見積もれないときは -1
+		 */
+		int estimate(String[] theTerms);
+
+		/**
+		 * 変数に値を代入して解いても，代入せずに解いてから結合したときと同じ解になるか<br>
+		 * ? で始まる値と照合すると，Matcher が質問の変数と値の変数を互いに束縛するので同じにならない
+		 *
+		 * @param theTerms
+		 *            質問の各項(? で始まるものは変数)
+		 * @return 同じになるなら true
+		 */
+		boolean substitutable(String[] theTerms);
+	}
+
+	private Source source;
+
+	QueryJoiner(Source theSource) {
+		source = theSource;
+	}
+
+	/**
+	 * 質問をする
+	 *
+	 * @param theQueries
+	 *            質問のリスト
+	 * @return 変数束縛情報のリスト(解のリスト)
+	 */
+	public List<Map<String, String>> doQuery(List<String[]> theQueries) {
+		List<String[]> remaining = new ArrayList<>(theQueries);
+		List<Map<String, String>> result = null;
+		Set<String> bound = new HashSet<>();
+		// これまでの join は最後の二つの質問の解から結合し，どちらも変数を束縛しない解の組は捨てていたので，
+		// そうなりうるときは最後の二つを先に結合する
+		int last = remaining.size() - 1;
+		if (last >= 2 && unbinding(remaining.get(last - 1)) && unbinding(remaining.get(last))) {
+			String[] theQuery = remaining.remove(last - 1);
+			result = new ArrayList<>(source.query(theQuery));
+			bound.addAll(variables(theQuery));
+			theQuery = remaining.remove(last - 1);
+			result = removeEmpty(joinQuery(result, theQuery, bound));
+			if (result.isEmpty()) {
+				return result;
+			}
+			bound.addAll(variables(theQuery));
+		}
+		while (!remaining.isEmpty()) {
+			String[] theQuery = chooseNext(remaining, bound);
+			remaining.remove(theQuery);
+			if (result == null) {
+				result = new ArrayList<>(source.query(theQuery));
+			} else {
+				result = joinQuery(result, theQuery, bound);
+			}
+			if (result.isEmpty()) {
+				// 失敗したとき
+				return result;
+			}
+			bound.addAll(variables(theQuery));
+		}
+		if (result == null) {
+			return new ArrayList<>();
+		}
+		return (theQueries.size() > 1) ? removeEmpty(result) : result;
+	}
+
+	/**
+	 * 次に解く質問を選ぶ<br>
+	 * すでに束縛された変数を含む質問を優先し，その中で候補の一番少ないものを選ぶ．
+	 */
+	String[] chooseNext(List<String[]> theQueries, Set<String> theBound) {
+		String[] best = null;
+		boolean bestShares = false;
+		int bestEstimate = Integer.MAX_VALUE;
+		for (String[] theQuery : theQueries) {
+			boolean shares = false;
+			if (!theBound.isEmpty()) {
+				Set<String> vars = variables(theQuery);
+				// 変数を含まない質問は絞り込みにしか使わないので，いつでも安い
+				shares = vars.isEmpty() || !disjoint(vars, theBound);
+			}
+			int estimate = source.estimate(theQuery);
+			if (estimate < 0) {
+				estimate = Integer.MAX_VALUE;
+			}
+			if (best == null || (shares && !bestShares) || (shares == bestShares && estimate < bestEstimate)) {
+				best = theQuery;
+				bestShares = shares;
+				bestEstimate = estimate;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * これまでの解に質問を一つ結合する<br>
+	 * 共通する変数の値の種類が候補より少なければ，値を代入して問い合わせる．
+	 * そうでなければ質問を一度だけ解いてハッシュ結合する．
+	 * 代入すると解が変わりうる質問(Source.substitutable が false)も，一度だけ解いてハッシュ結合する．
+	 */
+	List<Map<String, String>> joinQuery(List<Map<String, String>> theBindings, String[] theQuery,
+			Set<String> theBound) {
+		List<String> shared = new ArrayList<>();
+		for (String var : variables(theQuery)) {
+			if (theBound.contains(var)) {
+				shared.add(var);
+			}
+		}
+		// 共通する変数の値でこれまでの解を分ける
+		Map<String, List<Map<String, String>>> groups = group(theBindings, shared);
+		List<Map<String, String>> resultBindings = new ArrayList<>();
+		int estimate = source.estimate(theQuery);
+		if (shared.isEmpty()
+				|| ((estimate < 0 || groups.size() <= estimate) && source.substitutable(theQuery))) {
+			for (List<Map<String, String>> group : groups.values()) {
+				List<Map<String, String>> bindings2 = source.query(substitute(theQuery, group.get(0), shared));
+				for (Map<String, String> theBinding1 : group) {
+					for (Map<String, String> theBinding2 : bindings2) {
+						addJoined(resultBindings, theBinding1, theBinding2);
+					}
+				}
+			}
+		} else {
+			hashJoin(theBindings, source.query(theQuery), resultBindings);
+		}
+		return resultBindings;
+	}
+
+	/**
+	 * 変数束縛情報のリストを全て結合する<br>
+	 * 短いリストから順に，変数を共有するものを優先して結合する．
+	 * 途中で解が無くなったらそこで打ち切る．
+	 *
+	 * @param theBindingsList
+	 *            変数束縛情報のリストのリスト
+	 * @return 結合後の変数束縛情報のリスト
+	 */
+	public static List<Map<String, String>> join(List<List<Map<String, String>>> theBindingsList) {
+		List<List<Map<String, String>>> remaining = new ArrayList<>(theBindingsList);
+		List<Map<String, String>> result = null;
+		Set<String> bound = new HashSet<>();
+		// これまでどおり，最後の二つのリストの空の変数束縛情報同士の組は捨てる
+		int last = remaining.size() - 1;
+		if (last >= 2 && containsEmpty(remaining.get(last - 1)) && containsEmpty(remaining.get(last))) {
+			List<Map<String, String>> bindings1 = remaining.remove(last - 1);
+			List<Map<String, String>> bindings2 = remaining.remove(last - 1);
+			result = new ArrayList<>();
+			hashJoin(bindings1, bindings2, result);
+			removeEmpty(result);
+			if (result.isEmpty()) {
+				return result;
+			}
+			bound.addAll(keys(bindings1));
+			bound.addAll(keys(bindings2));
+		}
+		while (!remaining.isEmpty()) {
+			List<Map<String, String>> next = null;
+			boolean nextShares = false;
+			for (List<Map<String, String>> bindings : remaining) {
+				boolean shares = result != null && !disjoint(keys(bindings), bound);
+				if (next == null || (shares && !nextShares)
+						|| (shares == nextShares && bindings.size() < next.size())) {
+					next = bindings;
+					nextShares = shares;
+				}
+			}
+			remaining.remove(next);
+			if (result == null) {
+				result = new ArrayList<>(next);
+			} else {
+				List<Map<String, String>> joined = new ArrayList<>();
+				hashJoin(result, next, joined);
+				result = joined;
+			}
+			if (result.isEmpty()) {
+				break;
+			}
+			bound.addAll(keys(next));
+		}
+		if (result == null) {
+			return new ArrayList<>();
+		}
+		return (theBindingsList.size() > 1) ? removeEmpty(result) : result;
+	}
+
+	/**
+	 * 変数束縛情報のリストを結合する<br>
+	 * 両方のリストのすべての束縛に共通する変数をキーにしてハッシュ結合する．
+	 *
+	 * @param theBindings1
+	 *            変数束縛情報のリスト1
+	 * @param theBindings2
+	 *            変数束縛情報のリスト2
+	 * @return 結合後の変数束縛情報のリスト
+	 */
+	public static List<Map<String, String>> joinBindings(List<Map<String, String>> theBindings1,
+			List<Map<String, String>> theBindings2) {
+		List<Map<String, String>> resultBindings = new ArrayList<>();
+		hashJoin(theBindings1, theBindings2, resultBindings);
+		return removeEmpty(resultBindings);
+	}
+
+	/**
+	 * 変数束縛情報のリスト同士をハッシュ結合して theResult に加える
+	 */
+	static void hashJoin(List<Map<String, String>> theBindings1, List<Map<String, String>> theBindings2,
+			List<Map<String, String>> theResult) {
+		if (theBindings1.isEmpty() || theBindings2.isEmpty()) {
+			return;
+		}
+		Set<String> common = commonKeys(theBindings1);
+		common.retainAll(commonKeys(theBindings2));
+		List<String> shared = new ArrayList<>(common);
+		Map<String, List<Map<String, String>>> table = group(theBindings2, shared);
+		for (Map<String, String> theBinding1 : theBindings1) {
+			List<Map<String, String>> bindings2 = table.get(key(theBinding1, shared));
+			if (bindings2 == null) {
+				continue;
+			}
+			for (Map<String, String> theBinding2 : bindings2) {
+				addJoined(theResult, theBinding1, theBinding2);
+			}
+		}
+	}
+
+	/**
+	 * 空の変数束縛情報を取り除く<br>
+	 * 変数を含まない質問同士を結合した結果は，これまでどおり解に含めない．
+	 */
+	static List<Map<String, String>> removeEmpty(List<Map<String, String>> theBindings) {
+		for (Iterator<Map<String, String>> it = theBindings.iterator(); it.hasNext();) {
+			if (it.next().size() == 0) {
+				it.remove();
+			}
+		}
+		return theBindings;
+	}
+
+	/**
+	 * 変数束縛情報を結合してリストに加える<br>
+	 * 競合があったときは加えない．
+	 */
+	static void addJoined(List<Map<String, String>> theResult, Map<String, String> theBinding1,
+			Map<String, String> theBinding2) {
+		Map<String, String> resultBinding = new HashMap<>(theBinding1);
+		for (Map.Entry<String, String> entry : theBinding2.entrySet()) {
+			String value1 = resultBinding.put(entry.getKey(), entry.getValue());
+			if (value1 != null && !value1.equals(entry.getValue())) {
+				return;
+			}
+		}
+		theResult.add(resultBinding);
+	}
+
+	/**
+	 * 変数の値をキーにして変数束縛情報を分ける
+	 */
+	static Map<String, List<Map<String, String>>> group(List<Map<String, String>> theBindings, List<String> theVars) {
+		Map<String, List<Map<String, String>>> groups = new LinkedHashMap<>();
+		for (Map<String, String> theBinding : theBindings) {
+			String key = key(theBinding, theVars);
+			List<Map<String, String>> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(key, group);
+			}
+			group.add(theBinding);
+		}
+		return groups;
+	}
+
+	/**
+	 * 変数の値を並べたキーを作る
+	 */
+	static String key(Map<String, String> theBinding, List<String> theVars) {
+		if (theVars.size() == 1) {
+			return theBinding.get(theVars.get(0));
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String var : theVars) {
+			sb.append(theBinding.get(var)).append('\0');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 質問の変数のうち theVars に含まれるものに，束縛されている値を代入する<br>
+	 * 同じグループの束縛で値が揃っているのは theVars の変数だけなので，ほかの変数には代入しない．
+	 * ? で始まる値や空白を含む値は，代入すると質問の意味が変わるので代入しない(結合するときに照合する)
+	 */
+	static String[] substitute(String[] theQuery, Map<String, String> theBinding, List<String> theVars) {
+		String[] result = new String[theQuery.length];
+		for (int i = 0; i < theQuery.length; i++) {
+			String value = theVars.contains(theQuery[i]) ? theBinding.get(theQuery[i]) : null;
+			result[i] = (value != null && TriplePattern.constant(value)) ? value : theQuery[i];
+		}
+		return result;
+	}
+
+	/**
+	 * 質問に含まれる変数の集合
+	 */
+	static Set<String> variables(String[] theQuery) {
+		Set<String> vars = new LinkedHashSet<>();
+		for (String term : theQuery) {
+			if (var(term)) {
+				vars.add(term);
+			}
+		}
+		return vars;
+	}
+
+	/**
+	 * 空の変数束縛情報を返しうる質問か<br>
+	 * 変数を含まない質問と，? で始まる値と照合しうる質問は，変数を束縛しない解を返すことがある
+	 */
+	boolean unbinding(String[] theQuery) {
+		return variables(theQuery).isEmpty() || !source.substitutable(theQuery);
+	}
+
+	/**
+	 * 空の変数束縛情報を含むか
+	 */
+	static boolean containsEmpty(List<Map<String, String>> theBindings) {
+		for (Map<String, String> theBinding : theBindings) {
+			if (theBinding.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * すべての変数束縛情報に含まれる変数の集合
+	 */
+	static Set<String> commonKeys(List<Map<String, String>> theBindings) {
+		Iterator<Map<String, String>> it = theBindings.iterator();
+		Set<String> common = new HashSet<>(it.next().keySet());
+		while (it.hasNext() && !common.isEmpty()) {
+			common.retainAll(it.next().keySet());
+		}
+		return common;
+	}
+
+	/**
+	 * いずれかの変数束縛情報に含まれる変数の集合
+	 */
+	static Set<String> keys(List<Map<String, String>> theBindings) {
+		Set<String> keys = new HashSet<>();
+		for (Map<String, String> theBinding : theBindings) {
+			keys.addAll(theBinding.keySet());
+		}
+		return keys;
+	}
+
+	static boolean disjoint(Set<String> set1, Set<String> set2) {
+		for (String str : set1) {
+			if (set2.contains(str)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean var(String str1) {
+		// 先頭が ? なら変数
+		return str1.startsWith("?");
+	}
+}
@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * スロット値の索引<br>
+ * フレーム → スロット → スロット値 と スロット → スロット値 → フレーム の両方向で持ち，
+ * 質問の定数部分からスロット値を直接引けるようにする．
+ * スロット値は質問との照合に使う文字列で持つ．
+ * ? で始まる値や空白を含む値は，質問の定数と文字列が違っても Matcher で照合すると一致しうるので，
+ * スロットごとに別にも持っておき，定数で引いたときの候補に加える．
+ */
+class SlotIndex {
+	// フレーム名 -> スロット名 -> スロット値
+	private Map<String, Map<String, List<String>>> mByFrame = new HashMap<>();
+	// スロット名 -> スロット値 -> フレーム名
+	private Map<String, Map<String, Set<String>>> mBySlot = new HashMap<>();
+	// スロット名 -> フレーム名 -> 一つの定数でないスロット値
+	private Map<String, Map<String, List<String>>> mIrregular = new HashMap<>();
+
+	/**
+	 * フレームのスロット値を登録し直す
+	 *
+	 * @param inFrameName
+	 *            フレーム名
+	 * @param inSlotName
+	 *            スロット名
+	 * @param inValues
+	 *            スロット値．null ならスロットを索引から消す
+	 */
+	public void put(String inFrameName, String inSlotName, List<String> inValues) {
+		remove(inFrameName, inSlotName);
+		if (inValues == null) {
+			return;
+		}
+		Map<String, List<String>> slots = mByFrame.get(inFrameName);
+		if (slots == null) {
+			slots = new HashMap<>();
+			mByFrame.put(inFrameName, slots);
+		}
+		slots.put(inSlotName, inValues);
+		Map<String, Set<String>> values = mBySlot.get(inSlotName);
+		if (values == null) {
+			values = new HashMap<>();
+			mBySlot.put(inSlotName, values);
+		}
+		for (String value : inValues) {
+			Set<String> frames = values.get(value);
+			if (frames == null) {
+				frames = new LinkedHashSet<>();
+				values.put(value, frames);
+			}
+			frames.add(inFrameName);
+			if (!TriplePattern.constant(value)) {
+				Map<String, List<String>> irregular = mIrregular.get(inSlotName);
+				if (irregular == null) {
+					irregular = new LinkedHashMap<>();
+					mIrregular.put(inSlotName, irregular);
+				}
+				List<String> irregularValues = irregular.get(inFrameName);
+				if (irregularValues == null) {
+					irregularValues = new ArrayList<>();
+					irregular.put(inFrameName, irregularValues);
+				}
+				irregularValues.add(value);
+			}
+		}
+	}
+
+	/**
+	 * フレームのスロットを索引から消す
+	 */
+	public void remove(String inFrameName, String inSlotName) {
+		Map<String, List<String>> slots = mByFrame.get(inFrameName);
+		if (slots == null) {
+			return;
+		}
+		List<String> oldValues = slots.remove(inSlotName);
+		if (oldValues == null) {
+			return;
+		}
+		if (slots.isEmpty()) {
+			mByFrame.remove(inFrameName);
+		}
+		Map<String, Set<String>> values = mBySlot.get(inSlotName);
+		for (String value : oldValues) {
+			Set<String> frames = values.get(value);
+			frames.remove(inFrameName);
+			if (frames.isEmpty()) {
+				values.remove(value);
+			}
+		}
+		if (values.isEmpty()) {
+			mBySlot.remove(inSlotName);
+		}
+		Map<String, List<String>> irregular = mIrregular.get(inSlotName);
+		if (irregular != null && irregular.remove(inFrameName) != null && irregular.isEmpty()) {
+			mIrregular.remove(inSlotName);
+		}
+	}
+
+	/**
+	 * スロット名 inSlotName を持つすべてのフレームについて，索引から消す
+	 */
+	public void removeSlot(String inSlotName) {
+		Map<String, Set<String>> values = mBySlot.get(inSlotName);
+		if (values == null) {
+			return;
+		}
+		Set<String> frames = new LinkedHashSet<>();
+		for (Set<String> set : values.values()) {
+			frames.addAll(set);
+		}
+		for (String frameName : frames) {
+			remove(frameName, inSlotName);
+		}
+	}
+
+	/**
+	 * フレームに登録されているスロットとスロット値
+	 *
+	 * @return スロット名 -> スロット値
+	 */
+	public Map<String, List<String>> getSlots(String inFrameName) {
+		Map<String, List<String>> slots = mByFrame.get(inFrameName);
+		if (slots == null) {
+			return Collections.emptyMap();
+		}
+		return slots;
+	}
+
+	/**
+	 * スロットに登録されているスロット値とフレーム
+	 *
+	 * @return スロット値 -> フレーム名
+	 */
+	public Map<String, Set<String>> getValues(String inSlotName) {
+		Map<String, Set<String>> values = mBySlot.get(inSlotName);
+		if (values == null) {
+			return Collections.emptyMap();
+		}
+		return values;
+	}
+
+	/**
+	 * スロット inSlotName の値が inValue であるフレーム
+	 */
+	public Set<String> getFrames(String inSlotName, String inValue) {
+		Set<String> frames = getValues(inSlotName).get(inValue);
+		if (frames == null) {
+			return Collections.emptySet();
+		}
+		return frames;
+	}
+
+	/**
+	 * スロット inSlotName の値のうち，? で始まるか空白を含むもの<br>
+	 * 質問のスロット値が定数でも，Matcher で照合すると一致しうる
+	 *
+	 * @return フレーム名 -> スロット値
+	 */
+	public Map<String, List<String>> getIrregular(String inSlotName) {
+		Map<String, List<String>> irregular = mIrregular.get(inSlotName);
+		if (irregular == null) {
+			return Collections.emptyMap();
+		}
+		return irregular;
+	}
+
+	/**
+	 * ? で始まる値や空白を含む値が登録されているか
+	 */
+	public boolean hasIrregular() {
+		return !mIrregular.isEmpty();
+	}
+
+	/**
+	 * スロット inSlotName の値が inValue であるか，inValue と一致しうる (フレーム, スロット値) の組の数
+	 */
+	public int count(String inSlotName, String inValue) {
+		int count = getFrames(inSlotName, inValue).size();
+		for (List<String> values : getIrregular(inSlotName).values()) {
+			count += values.size();
+		}
+		return count;
+	}
+
+	/**
+	 * 索引に登録されているスロット名
+	 */
+	public Set<String> getSlotNames() {
+		return mBySlot.keySet();
+	}
+
+	/**
+	 * スロット inSlotName に登録されている (フレーム, スロット値) の組の数
+	 */
+	public int count(String inSlotName) {
+		int count = 0;
+		for (Set<String> frames : getValues(inSlotName).values()) {
+			count += frames.size();
+		}
+		return count;
+	}
+
+	/**
+	 * 索引に登録されている (フレーム, スロット, スロット値) の組の数
+	 */
+	public int size() {
+		int count = 0;
+		for (String slotName : mBySlot.keySet()) {
+			count += count(slotName);
+		}
+		return count;
+	}
+}
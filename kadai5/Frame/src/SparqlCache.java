@@ -0,0 +1,275 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 問い合わせの結果を覚えておくキャッシュ<br>
+ * メモリには最近使った MAX_ENTRIES 個までを，ディレクトリには MAX_FILES 個までを(古いものから消して)覚えておく．
+ * 覚えてから ttl ミリ秒を過ぎた結果は使わない．ディレクトリが null のときはメモリだけに覚える．
+ * ディレクトリのファイルの数は書くたびに数えておき，MAX_FILES 個を超えたときだけディレクトリを調べて，
+ * 書くたびに調べ直さないように MIN_FILES 個まで消す．
+ */
+class SparqlCache {
+	// メモリに覚えておく数
+	static final int MAX_ENTRIES = 256;
+	// ディレクトリに覚えておく数
+	static final int MAX_FILES = 4096;
+	// 超えたときに残す数
+	static final int MIN_FILES = MAX_FILES * 3 / 4;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File directory;
+	private long ttl;
+	// キー -> 結果(使った順)
+	private LinkedHashMap<String, Result> memory = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+	// メモリで見つかった回数，ディレクトリで見つかった回数，見つからなかった回数
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong diskHits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	// ディレクトリのファイルの数(消したファイルは数え直すまで減らさないので，実際より多いことがある)．-1 はまだ数えていない
+	private AtomicInteger files = new AtomicInteger(-1);
+
+	/**
+	 * 覚えた結果と覚えた時刻
+	 */
+	private static class Result {
+		String value;
+		long time;
+
+		Result(String theValue, long theTime) {
+			value = theValue;
+			time = theTime;
+		}
+	}
+
+	/**
+	 * @param theDirectory
+	 *            結果を書いておくディレクトリ(null ならメモリだけ)
+	 * @param theTtl
+	 *            結果を使う期間(ミリ秒)
+	 */
+	SparqlCache(File theDirectory, long theTtl) {
+		directory = theDirectory;
+		ttl = theTtl;
+	}
+
+	/**
+	 * 覚えておいた結果を返す
+	 *
+	 * @param key
+	 *            キー
+	 * @return 結果．覚えていないか，古くなっていたときは null
+	 */
+	String get(String key) {
+		long now = System.currentTimeMillis();
+		Result entry;
+		synchronized (memory) {
+			entry = memory.get(key);
+			if (entry != null && now - entry.time > ttl) {
+				memory.remove(key);
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			hits.incrementAndGet();
+			return entry.value;
+		}
+		entry = read(key);
+		if (entry != null && now - entry.time <= ttl) {
+			synchronized (memory) {
+				memory.put(key, entry);
+			}
+			diskHits.incrementAndGet();
+			return entry.value;
+		}
+		if (entry != null) {
+			file(key).delete();
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * 結果を覚える
+	 *
+	 * @param key
+	 *            キー
+	 * @param value
+	 *            結果
+	 */
+	void put(String key, String value) {
+		Result entry = new Result(value, System.currentTimeMillis());
+		synchronized (memory) {
+			memory.put(key, entry);
+		}
+		write(key, entry);
+	}
+
+	/**
+	 * 覚えておいた結果をすべて捨てる
+	 */
+	void clear() {
+		synchronized (memory) {
+			memory.clear();
+		}
+		File[] list = (directory != null) ? directory.listFiles() : null;
+		if (list != null) {
+			for (File file : list) {
+				file.delete();
+			}
+		}
+		files.set(-1);
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getDiskHits() {
+		return diskHits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * 覚えておいた結果を返した割合
+	 */
+	double getHitRate() {
+		long found = hits.get() + diskHits.get();
+		long total = found + misses.get();
+		return (total == 0) ? 0 : (double) found / total;
+	}
+
+	/**
+	 * キーに対するファイル．キーの MD5 を名前にする
+	 */
+	private File file(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(UTF8));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest) {
+				name.append(String.format("%02x", b & 0xff));
+			}
+			return new File(directory, name.toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * ファイルから結果を読む．無いときや読めないときは null
+	 */
+	private Result read(String key) {
+		if (directory == null) {
+			return null;
+		}
+		File file = file(key);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			long time = in.readLong();
+			String storedKey = readString(in, file.length());
+			String value = readString(in, file.length());
+			// MD5 が同じ別のキー
+			return storedKey.equals(key) ? new Result(value, time) : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 結果をファイルに書く．一時ファイルに書いてから名前を変えるので，読みかけのファイルは見えない
+	 */
+	private void write(String key, Result entry) {
+		if (directory == null || (!directory.isDirectory() && !directory.mkdirs())) {
+			return;
+		}
+		File file = file(key);
+		File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+			out.writeLong(entry.time);
+			writeString(out, key);
+			writeString(out, entry.value);
+		} catch (IOException e) {
+			System.err.println("問い合わせの結果を " + directory + " に書けませんでした");
+			temp.delete();
+			return;
+		}
+		boolean replaced = file.delete();
+		if (!temp.renameTo(file)) {
+			temp.delete();
+		}
+		int count = files.get();
+		if (count < 0) {
+			// 初めて書いたときに，それまでにあったファイルを数える
+			String[] names = directory.list();
+			files.compareAndSet(-1, (names != null) ? names.length : 0);
+			count = files.get();
+		} else if (!replaced) {
+			count = files.incrementAndGet();
+		}
+		if (count > MAX_FILES) {
+			evict();
+		}
+	}
+
+	/**
+	 * ファイルが MAX_FILES 個を超えていたら，古いものから消して MIN_FILES 個にする
+	 */
+	private void evict() {
+		File[] list = directory.listFiles();
+		if (list == null) {
+			return;
+		}
+		if (list.length <= MAX_FILES) {
+			files.set(list.length);
+			return;
+		}
+		files.set(MIN_FILES);
+		Arrays.sort(list, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+		for (int i = 0; i < list.length - MIN_FILES; i++) {
+			list[i].delete();
+		}
+	}
+
+	private static String readString(DataInputStream in, long limit) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > limit) {
+			throw new IOException("壊れたファイル");
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
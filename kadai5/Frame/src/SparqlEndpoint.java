@@ -0,0 +1,20 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * SPARQLの問い合わせ先<br>
+ * DBpedia はこのインタフェースを通して問い合わせるので，試験用の問い合わせ先などに差し替えられる．
+ * 結果は読みながら解析するので，全体を文字列にはしない．
+ */
+public interface SparqlEndpoint {
+	/**
+	 * SPARQLのクエリを問い合わせる
+	 *
+	 * @param sparqlQuery
+	 *            SPARQLのクエリ
+	 * @return csv形式の結果を読む Reader．読み終えたら閉じる
+	 * @throws IOException
+	 *             問い合わせに失敗したとき
+	 */
+	Reader open(String sparqlQuery) throws IOException;
+}
@@ -0,0 +1,132 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * パネルの描画を一定の大きさのタイルに分けて画像に描いておくキャッシュ<br>
+ * 描き直すときはクリップに重なるタイルの画像を写すだけにし，まだ無いタイルだけを描く．
+ * 描く内容が変わったときは invalidate で変わった範囲のタイルだけを捨てる．
+ * タイルの数が MAX_TILES を超えたら，長く使っていないタイルから捨てる．
+ */
+class TileCache {
+	// タイルの一辺の長さ
+	static final int TILE_SIZE = 256;
+	// 持っておくタイルの数
+	static final int MAX_TILES = 128;
+
+	/**
+	 * タイルに描く内容
+	 */
+	interface Painter {
+		/**
+		 * g のクリップの範囲を描く．g は背景で塗りつぶしてある
+		 */
+		void paintTile(Graphics2D g);
+	}
+
+	private Painter painter;
+	private Color background;
+	// (行, 列) -> タイルの画像(使った順)
+	private LinkedHashMap<Long, BufferedImage> tiles;
+
+	TileCache(Painter thePainter, Color theBackground) {
+		painter = thePainter;
+		background = theBackground;
+		tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+				return size() > MAX_TILES;
+			}
+		};
+	}
+
+	/**
+	 * クリップに重なるタイルを写す
+	 *
+	 * @param g
+	 *            対象のGraphicsオブジェクト
+	 * @param width
+	 *            描画枠の幅
+	 * @param height
+	 *            描画枠の高さ
+	 */
+	public void paint(Graphics g, int width, int height) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, width, height);
+		}
+		int c1 = Math.max(0, clip.x / TILE_SIZE);
+		int r1 = Math.max(0, clip.y / TILE_SIZE);
+		int c2 = (clip.x + clip.width - 1) / TILE_SIZE;
+		int r2 = (clip.y + clip.height - 1) / TILE_SIZE;
+		for (int r = r1; r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				g.drawImage(tile(r, c), c * TILE_SIZE, r * TILE_SIZE, null);
+			}
+		}
+	}
+
+	private BufferedImage tile(int r, int c) {
+		Long key = key(r, c);
+		BufferedImage image = tiles.get(key);
+		if (image == null) {
+			image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = image.createGraphics();
+			try {
+				g.setColor(background);
+				g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+				g.translate(-c * TILE_SIZE, -r * TILE_SIZE);
+				g.setClip(c * TILE_SIZE, r * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+				painter.paintTile(g);
+			} finally {
+				g.dispose();
+			}
+			tiles.put(key, image);
+		}
+		return image;
+	}
+
+	/**
+	 * 範囲に重なるタイルを捨てる
+	 *
+	 * @param area
+	 *            描く内容が変わった範囲
+	 */
+	public void invalidate(Rectangle area) {
+		if (area.isEmpty()) {
+			return;
+		}
+		int c1 = floorDiv(area.x, TILE_SIZE);
+		int r1 = floorDiv(area.y, TILE_SIZE);
+		int c2 = floorDiv(area.x + area.width, TILE_SIZE);
+		int r2 = floorDiv(area.y + area.height, TILE_SIZE);
+		for (Iterator<Long> it = tiles.keySet().iterator(); it.hasNext();) {
+			long key = it.next();
+			int r = (int) (key >> 32);
+			int c = (int) key;
+			if (r1 <= r && r <= r2 && c1 <= c && c <= c2) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * すべてのタイルを捨てる
+	 */
+	public void invalidateAll() {
+		tiles.clear();
+	}
+
+	private static int floorDiv(int x, int size) {
+		return (x >= 0) ? x / size : -((-x - 1) / size) - 1;
+	}
+
+	private static Long key(int r, int c) {
+		return ((long) r << 32) | (c & 0xffffffffL);
+	}
+}
@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 前もって解析しておいた単体の質問 (フレーム, スロット, スロット値)<br>
+ * 各項を定数か変数の番号に分けておき，照合のたびに文字列を連結したり分割したりしない．
+ * 変数の値は使い回しの配列に書き，照合に成功したときだけ変数束縛情報を作る．
+ * 空白を含む項や ? で始まる値など，項ごとの照合にならないものは Matcher で照合する．
+ */
+class TriplePattern {
+	// 質問の各項
+	private final String[] mTerms;
+	// 定数の項は文字列，変数の項は null
+	private final String[] mConstants;
+	// 変数の項は変数の番号，定数の項は -1
+	private final int[] mSlots;
+	// 変数名(番号順)
+	private final String[] mVariables;
+	// すべての項が空白を含まない一つのトークンか
+	private final boolean mSimple;
+	// 変数の値(照合のたびに使い回す)
+	private final String[] mValues;
+
+	/**
+	 * 質問を解析する
+	 *
+	 * @param inFrame
+	 *            フレーム名
+	 * @param inSlot
+	 *            スロット名
+	 * @param inValue
+	 *            スロット値
+	 */
+	TriplePattern(String inFrame, String inSlot, String inValue) {
+		mTerms = new String[] { inFrame, inSlot, inValue };
+		mConstants = new String[mTerms.length];
+		mSlots = new int[mTerms.length];
+		List<String> tVariables = new ArrayList<>();
+		boolean tSimple = true;
+		for (int i = 0; i < mTerms.length; i++) {
+			String tTerm = mTerms[i];
+			if (!token(tTerm)) {
+				tSimple = false;
+			}
+			if (tTerm.startsWith("?")) {
+				int tSlot = tVariables.indexOf(tTerm);
+				if (tSlot < 0) {
+					tSlot = tVariables.size();
+					tVariables.add(tTerm);
+				}
+				mSlots[i] = tSlot;
+			} else {
+				mConstants[i] = tTerm.intern();
+				mSlots[i] = -1;
+			}
+		}
+		mVariables = tVariables.toArray(new String[tVariables.size()]);
+		mSimple = tSimple;
+		mValues = new String[mVariables.length];
+	}
+
+	/**
+	 * (フレーム, スロット, スロット値) と照合する
+	 *
+	 * @return 成功したら変数束縛情報，失敗したら null
+	 */
+	Map<String, String> match(String inFrame, String inSlot, String inValue) {
+		if (!mSimple) {
+			return matchString(inFrame + " " + inSlot + " " + inValue);
+		}
+		for (int i = 0; i < mValues.length; i++) {
+			mValues[i] = null;
+		}
+		if (matchTerm(0, inFrame) && matchTerm(1, inSlot) && matchTerm(2, inValue)) {
+			return binding();
+		}
+		// 項ごとには照合できない値なら，これまでどおり文字列で照合する
+		if (!constant(inFrame) || !constant(inSlot) || !constant(inValue)) {
+			return matchString(inFrame + " " + inSlot + " " + inValue);
+		}
+		return null;
+	}
+
+	private boolean matchTerm(int i, String inTerm) {
+		int tSlot = mSlots[i];
+		if (tSlot < 0) {
+			return mConstants[i].equals(inTerm);
+		}
+		String tValue = mValues[tSlot];
+		if (tValue == null) {
+			if (!constant(inTerm)) {
+				// 変数同士や空白を含む値は項ごとには照合しない
+				return false;
+			}
+			mValues[tSlot] = inTerm;
+			return true;
+		}
+		return tValue.equals(inTerm);
+	}
+
+	/**
+	 * 変数の値から変数束縛情報を作る
+	 */
+	private Map<String, String> binding() {
+		Map<String, String> tBinding = new HashMap<>();
+		for (int i = 0; i < mVariables.length; i++) {
+			tBinding.put(mVariables[i], mValues[i]);
+		}
+		return tBinding;
+	}
+
+	/**
+	 * Matcher で文字列として照合する
+	 */
+	private Map<String, String> matchString(String inString) {
+		StringBuilder tQuestion = new StringBuilder();
+		for (int i = 0; i < mTerms.length; i++) {
+			if (i > 0) {
+				tQuestion.append(' ');
+			}
+			tQuestion.append(mTerms[i]);
+		}
+		HashMap<String, String> tBinding = new HashMap<>();
+		if (new Matcher().matching(tQuestion.toString(), inString, tBinding)) {
+			return tBinding;
+		}
+		return null;
+	}
+
+	/**
+	 * 空白を含まず，? で始まらない一つのトークンか
+	 */
+	static boolean constant(String inTerm) {
+		return token(inTerm) && inTerm.charAt(0) != '?';
+	}
+
+	/**
+	 * 空白を含まない一つのトークンか
+	 */
+	static boolean token(String inTerm) {
+		if (inTerm.isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < inTerm.length(); i++) {
+			switch (inTerm.charAt(i)) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+			case '\f':
+				return false;
+			default:
+				break;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,738 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * バネと静電気の力でノードを配置する計算を，座標を配列で持って行うクラス<br>
+ * 全ノードからの反発力は四分木(Barnes-Hut 法)で近似し，十分遠くにあるノードの集まりは重心にある一つの点として扱う．
+ * 配列は最初に確保したものを使い回し，一手ごとにオブジェクトを作らない．
+ * 一手では今の座標と速さから次の座標と速さを別の配列に求めて入れ替える(ダブルバッファ)ので，
+ * ノードごとの計算は順序によらず，複数のスレッドで分けて行える．
+ * 座標が重なったときに使う乱数も CHUNK 個のノードごとに持ち，一手ごとに決まった種から始めるので，
+ * 一つのスレッドで計算しても複数のスレッドで計算しても同じ結果になる．
+ */
+class ForceLayout {
+	double dt = 0.1d;			// 一回の試行の時間
+	double k = 0.5d;			// バネ定数
+	double l = 130.0d;			// バネの自然長
+	double g = 1000.0d;			// 静電気の反発係数
+	double m = 0.3d;			// 空気抵抗の係数
+	double theta = 0.8d;		// 四分木の区画の幅 / 距離 がこれより小さければ重心で近似する。0 なら近似しない
+	int parallelism = Runtime.getRuntime().availableProcessors();	// 力を計算するスレッドの数
+
+	// ノードをこの数ずつに分けて，スレッドに割り当てる
+	static final int CHUNK = 1024;
+
+	// ノード(番号順)
+	Node[] nodes;
+	// 座標
+	double[] x;
+	double[] y;
+	// 速さ
+	double[] vx;
+	double[] vy;
+	// 次の座標と速さ(一手ごとに x, y, vx, vy と入れ替える)
+	double[] nextX;
+	double[] nextY;
+	double[] nextVx;
+	double[] nextVy;
+	// 一手で求めた力
+	double[] fx;
+	double[] fy;
+	// 隣接ノードの番号．i 番のノードの隣接ノードは neighbors[neighborStart[i]] から neighbors[neighborStart[i + 1] - 1] まで
+	int[] neighborStart;
+	int[] neighbors;
+
+	QuadTree tree;
+	// relaxLocally で動かすノードの番号．null ならすべてのノードを動かす
+	int[] active;
+	// relaxLocally で固定したノードの四分木
+	QuadTree fixedTree;
+	// 四分木をたどるときのスタック(CHUNK 個のノードごとに一つ)
+	int[][] stacks;
+	// 座標が重なったときに使う乱数(CHUNK 個のノードごとに一つ)と，一手ごとの種
+	Random[] randoms;
+	long stepSeed;
+	// 並べるときと，一手ごとの種を決めるときに使う乱数
+	Random rand;
+
+	// relax で進めた手数と，最後の一手の後の運動エネルギーの合計
+	int iterations;
+	double energy;
+
+	/**
+	 * ノードと隣接関係を配列にする
+	 *
+	 * @param theNodes
+	 *            配置するノード
+	 */
+	ForceLayout(ArrayList<Node> theNodes) {
+		int n = theNodes.size();
+		nodes = theNodes.toArray(new Node[n]);
+		x = new double[n];
+		y = new double[n];
+		vx = new double[n];
+		vy = new double[n];
+		nextX = new double[n];
+		nextY = new double[n];
+		nextVx = new double[n];
+		nextVy = new double[n];
+		fx = new double[n];
+		fy = new double[n];
+
+		// ノードの辞書での番号 -> 配列での番号
+		int maxId = 0;
+		for (int i = 0; i < n; i++) {
+			maxId = Math.max(maxId, nodes[i].getId());
+		}
+		int[] indexById = new int[maxId + 1];
+		Arrays.fill(indexById, -1);
+		for (int i = 0; i < n; i++) {
+			indexById[nodes[i].getId()] = i;
+		}
+
+		// 隣接ノードは入ってくるリンクの tail と出ていくリンクの head (重複と自分自身は除く)
+		neighborStart = new int[n + 1];
+		int[] adjacency = new int[16];
+		int count = 0;
+		LinkedHashSet<Integer> around = new LinkedHashSet<Integer>();
+		for (int i = 0; i < n; i++) {
+			around.clear();
+			for (Link theLink : nodes[i].getArriveAtMeLinks()) {
+				addNeighbor(around, indexById, theLink.getTail(), i);
+			}
+			for (Link theLink : nodes[i].getDepartFromMeLinks()) {
+				addNeighbor(around, indexById, theLink.getHead(), i);
+			}
+			neighborStart[i] = count;
+			if (adjacency.length < count + around.size()) {
+				adjacency = Arrays.copyOf(adjacency, Math.max(adjacency.length * 2, count + around.size()));
+			}
+			for (int j : around) {
+				adjacency[count++] = j;
+			}
+		}
+		neighborStart[n] = count;
+		neighbors = Arrays.copyOf(adjacency, count);
+
+		tree = new QuadTree(n);
+		stacks = new int[(n + CHUNK - 1) / CHUNK + 1][QuadTree.MAX_DEPTH * 3 + 4];
+		randoms = new Random[stacks.length];
+		for (int c = 0; c < randoms.length; c++) {
+			randoms[c] = new Random();
+		}
+		rand = new Random();
+	}
+
+	private static void addNeighbor(LinkedHashSet<Integer> around, int[] indexById, Node theNode, int self) {
+		int id = theNode.getId();
+		int j = (id < indexById.length) ? indexById[id] : -1;
+		if (j >= 0 && j != self) {
+			around.add(j);
+		}
+	}
+
+	/**
+	 * ノードの数
+	 */
+	int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * 中心の周りに円形に並べる(少しずつずらして，同じ位置に重ならないようにする)
+	 *
+	 * @param center
+	 *            円の中心の座標
+	 * @param radius
+	 *            円の半径
+	 */
+	void circularize(double center, double radius) {
+		double dtheta = 2.0d * Math.PI / (double) size();
+		for (int i = 0; i < size(); i++) {
+			x[i] = radius * Math.cos(dtheta * i) + center + rand.nextDouble() * 20;
+			y[i] = radius * Math.sin(dtheta * i) + center + rand.nextDouble() * 20;
+			vx[i] = 0;
+			vy[i] = 0;
+		}
+	}
+
+	/**
+	 * 位置の決まっていないノードを，位置の決まった隣接ノードの近くに置く<br>
+	 * 隣接ノードの重心から自然長の半分ほど離れたところに置き，置いたノードの隣接ノードを続けて置く．
+	 * 位置の決まったノードにつながらないノードは center の近くに置く．
+	 *
+	 * @param placed
+	 *            位置の決まったノードは true．置いたノードも true になる
+	 * @param center
+	 *            つながりの無いノードを置く中心の座標
+	 * @return 置いたノードの番号
+	 */
+	int[] placeNear(boolean[] placed, double center) {
+		int[] queue = new int[size()];
+		boolean[] queued = placed.clone();
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < size(); i++) {
+			if (!placed[i] && hasPlacedNeighbor(i, placed)) {
+				queue[tail++] = i;
+				queued[i] = true;
+			}
+		}
+		for (int start = 0;; start++) {
+			while (head < tail) {
+				int i = queue[head++];
+				place(i, placed, center);
+				for (int p = neighborStart[i]; p < neighborStart[i + 1]; p++) {
+					int j = neighbors[p];
+					if (!queued[j]) {
+						queue[tail++] = j;
+						queued[j] = true;
+					}
+				}
+			}
+			// 位置の決まったノードにつながらないノードから，また広げる
+			while (start < size() && queued[start]) {
+				start++;
+			}
+			if (start == size()) {
+				break;
+			}
+			queue[tail++] = start;
+			queued[start] = true;
+		}
+		return Arrays.copyOf(queue, tail);
+	}
+
+	private boolean hasPlacedNeighbor(int i, boolean[] placed) {
+		for (int p = neighborStart[i]; p < neighborStart[i + 1]; p++) {
+			if (placed[neighbors[p]]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void place(int i, boolean[] placed, double center) {
+		double sx = 0;
+		double sy = 0;
+		int count = 0;
+		for (int p = neighborStart[i]; p < neighborStart[i + 1]; p++) {
+			int j = neighbors[p];
+			if (placed[j]) {
+				sx += x[j];
+				sy += y[j];
+				count++;
+			}
+		}
+		double angle = 2.0d * Math.PI * rand.nextDouble();
+		if (count == 0) {
+			x[i] = center + rand.nextDouble() * l * Math.cos(angle);
+			y[i] = center + rand.nextDouble() * l * Math.sin(angle);
+		} else {
+			x[i] = sx / count + l / 2 * Math.cos(angle);
+			y[i] = sy / count + l / 2 * Math.sin(angle);
+		}
+		vx[i] = 0;
+		vy[i] = 0;
+		placed[i] = true;
+	}
+
+	/**
+	 * nodeIndexes のノードと，そこから depth 個までのリンクでつながるノードの番号
+	 */
+	int[] around(int[] nodeIndexes, int depth) {
+		boolean[] reached = new boolean[size()];
+		int[] queue = new int[size()];
+		int tail = 0;
+		for (int i : nodeIndexes) {
+			if (!reached[i]) {
+				reached[i] = true;
+				queue[tail++] = i;
+			}
+		}
+		int head = 0;
+		for (int d = 0; d < depth; d++) {
+			int end = tail;
+			for (; head < end; head++) {
+				int i = queue[head];
+				for (int p = neighborStart[i]; p < neighborStart[i + 1]; p++) {
+					int j = neighbors[p];
+					if (!reached[j]) {
+						reached[j] = true;
+						queue[tail++] = j;
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(queue, tail);
+	}
+
+	/**
+	 * theActive のノードだけを動かして relax する<br>
+	 * 他のノードは今の位置に固定する．固定したノードからの反発力は，最初に一度だけ作る四分木から求める．
+	 *
+	 * @param theActive
+	 *            動かすノードの番号
+	 * @param maxSteps
+	 *            最大の手数
+	 * @param minEnergy
+	 *            動かすノードの運動エネルギーの合計がこれを下回ったら止める
+	 * @return 進めた手数
+	 */
+	int relaxLocally(int[] theActive, int maxSteps, double minEnergy) {
+		int[] fixed = new int[size()];
+		boolean[] moving = new boolean[size()];
+		for (int i : theActive) {
+			moving[i] = true;
+		}
+		int count = 0;
+		for (int i = 0; i < size(); i++) {
+			if (!moving[i]) {
+				fixed[count++] = i;
+			}
+		}
+		fixedTree = new QuadTree(count);
+		fixedTree.build(x, y, fixed, count);
+		active = theActive;
+		try {
+			return relax(maxSteps, minEnergy);
+		} finally {
+			active = null;
+			fixedTree = null;
+		}
+	}
+
+	/**
+	 * 動かすノードの数
+	 */
+	int activeCount() {
+		return (active != null) ? active.length : size();
+	}
+
+	/**
+	 * 運動エネルギーの合計が minEnergy を下回るか，maxSteps 手に達するまで進める<br>
+	 * 進めた手数と最後の運動エネルギーは iterations と energy に入る．
+	 *
+	 * @param maxSteps
+	 *            最大の手数
+	 * @param minEnergy
+	 *            運動エネルギーの合計がこれを下回ったら止める
+	 * @return 進めた手数
+	 */
+	int relax(int maxSteps, double minEnergy) {
+		iterations = 0;
+		energy = 0;
+		ForkJoinPool pool = (parallelism > 1 && activeCount() > CHUNK) ? new ForkJoinPool(parallelism) : null;
+		try {
+			while (iterations < maxSteps) {
+				energy = step(pool);
+				iterations++;
+				if (energy < minEnergy) {
+					break;
+				}
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+		return iterations;
+	}
+
+	/**
+	 * 一手進める
+	 *
+	 * @return 運動エネルギーの合計
+	 */
+	double step() {
+		return step(null);
+	}
+
+	/**
+	 * 一手進める<br>
+	 * すべてのノードの次の座標と速さを今の座標と速さから求めてから，配列を入れ替える．
+	 * relaxLocally の中では，動かすノードの分だけ写す．
+	 *
+	 * @param pool
+	 *            ノードを分けて計算するスレッドプール．null なら一つのスレッドで計算する
+	 * @return 運動エネルギーの合計
+	 */
+	double step(ForkJoinPool pool) {
+		int count = activeCount();
+		tree.build(x, y, active, count);
+		stepSeed = rand.nextLong();
+		double sum = (pool != null) ? pool.invoke(new StepTask(0, count)) : moveChunks(0, count);
+		if (active != null) {
+			for (int i : active) {
+				x[i] = nextX[i];
+				y[i] = nextY[i];
+				vx[i] = nextVx[i];
+				vy[i] = nextVy[i];
+			}
+			return sum;
+		}
+		double[] temp = x;
+		x = nextX;
+		nextX = temp;
+		temp = y;
+		y = nextY;
+		nextY = temp;
+		temp = vx;
+		vx = nextVx;
+		nextVx = temp;
+		temp = vy;
+		vy = nextVy;
+		nextVy = temp;
+		return sum;
+	}
+
+	/**
+	 * from 番目から to - 1 番目までの動かすノードを，StepTask と同じく CHUNK 個ずつに分けて一つのスレッドで move する<br>
+	 * 運動エネルギーも StepTask と同じ順に足すので，結果は StepTask と同じになる．
+	 *
+	 * @return 運動エネルギーの合計
+	 */
+	double moveChunks(int from, int to) {
+		if (to - from <= CHUNK) {
+			return moveChunk(from, to);
+		}
+		int mid = split(from, to);
+		double left = moveChunks(from, mid);
+		return moveChunks(mid, to) + left;
+	}
+
+	/**
+	 * CHUNK 個までのノードを，その CHUNK のスタックと乱数で move する
+	 */
+	double moveChunk(int from, int to) {
+		// from は CHUNK の倍数なので，スタックと乱数は他の CHUNK と重ならない
+		int chunk = from / CHUNK;
+		Random random = randoms[chunk];
+		random.setSeed(stepSeed + chunk);
+		return move(from, to, stacks[chunk], random);
+	}
+
+	/**
+	 * 分けるところ(CHUNK の倍数)
+	 */
+	static int split(int from, int to) {
+		return from + (to - from + CHUNK - 1) / CHUNK / 2 * CHUNK;
+	}
+
+	/**
+	 * from 番目から to - 1 番目までの動かすノードにかかる力を求め，次の座標と速さを求める
+	 *
+	 * @return 次の速さでの運動エネルギーの合計
+	 */
+	double move(int from, int to, int[] stack, Random random) {
+		double theta2 = theta * theta;
+		double sum = 0;
+		for (int p = from; p < to; p++) {
+			int i = (active != null) ? active[p] : p;
+			fx[i] = 0;
+			fy[i] = 0;
+			addSpringForce(i, random);
+			addRepulsiveForce(tree, i, theta2, stack, random);
+			if (fixedTree != null) {
+				addRepulsiveForce(fixedTree, i, theta2, stack, random);
+			}
+			// 空気抵抗力
+			fx[i] -= m * vx[i];
+			fy[i] -= m * vy[i];
+
+			// 速さを先に更新してから動かす(半陰的オイラー法)．次数の大きいノードのバネでも発散しにくい
+			double nvx = vx[i] + dt * fx[i];
+			double nvy = vy[i] + dt * fy[i];
+			double v2 = nvx * nvx + nvy * nvy;
+			double maxSpeed = l / dt;
+			if (v2 > maxSpeed * maxSpeed) {
+				// 一手でバネの自然長より遠くへは動かさない
+				double scale = maxSpeed / Math.sqrt(v2);
+				nvx *= scale;
+				nvy *= scale;
+				v2 = maxSpeed * maxSpeed;
+			}
+			nextVx[i] = nvx;
+			nextVy[i] = nvy;
+			nextX[i] = x[i] + dt * nvx;
+			nextY[i] = y[i] + dt * nvy;
+			sum += 0.5d * v2;
+		}
+		return sum;
+	}
+
+	/**
+	 * ノードを CHUNK 個ずつに分けて move を行うタスク
+	 */
+	class StepTask extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+
+		int from;
+		int to;
+
+		StepTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from <= CHUNK) {
+				return moveChunk(from, to);
+			}
+			int mid = split(from, to);
+			StepTask left = new StepTask(from, mid);
+			StepTask right = new StepTask(mid, to);
+			left.fork();
+			double sum = right.compute();
+			return sum + left.join();
+		}
+	}
+
+	/**
+	 * 隣接ノードからのバネの力
+	 */
+	void addSpringForce(int i, Random random) {
+		for (int p = neighborStart[i]; p < neighborStart[i + 1]; p++) {
+			int j = neighbors[p];
+			double dx = x[i] - x[j];
+			double dy = y[i] - y[j];
+			double d2 = dx * dx + dy * dy;
+			if (d2 < Double.MIN_VALUE) {
+				// 座標が重なってしまった場合
+				fx[i] += random.nextDouble() - 0.5d;
+				fy[i] += random.nextDouble() - 0.5d;
+				continue;
+			}
+			double d = Math.sqrt(d2);
+			double f = -k * (d - l) / d;
+			fx[i] += f * dx;
+			fy[i] += f * dy;
+		}
+	}
+
+	/**
+	 * 四分木に入っているノードからの反発力(距離の二乗に反比例)<br>
+	 * 四分木を根からたどり，十分遠い区画は重心にある一つの点として，近い区画は子の区画に分けて求める．
+	 */
+	void addRepulsiveForce(QuadTree t, int i, double theta2, int[] stack, Random random) {
+		if (t.size == 0) {
+			return;
+		}
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int c = stack[--top];
+			double mass = t.mass[c];
+			if (mass == 0) {
+				continue;
+			}
+			double sx = t.sumX[c];
+			double sy = t.sumY[c];
+			if (t.child[c] < 0) {
+				if (t.contains(c, i)) {
+					// 自分自身を除いた，同じ区画に重なったノード(MAX_DEPTH の葉には複数のノードが入る)
+					mass -= 1;
+					if (mass == 0) {
+						continue;
+					}
+					sx -= x[i];
+					sy -= y[i];
+				}
+			} else {
+				double dx = x[i] - sx / mass;
+				double dy = y[i] - sy / mass;
+				double w = 2 * t.half[c];
+				if (w * w >= theta2 * (dx * dx + dy * dy)) {
+					int first = t.child[c];
+					stack[top++] = first;
+					stack[top++] = first + 1;
+					stack[top++] = first + 2;
+					stack[top++] = first + 3;
+					continue;
+				}
+			}
+			double dx = x[i] - sx / mass;
+			double dy = y[i] - sy / mass;
+			double d2 = dx * dx + dy * dy;
+			if (d2 < Double.MIN_VALUE) {
+				// 座標が重なってしまった場合
+				fx[i] += (random.nextDouble() - 0.5d) * mass;
+				fy[i] += (random.nextDouble() - 0.5d) * mass;
+				continue;
+			}
+			double d = Math.sqrt(d2);
+			double f = g * mass / (d2 * d);
+			fx[i] += f * dx;
+			fy[i] += f * dy;
+		}
+	}
+
+	/**
+	 * 反発力の計算に使う四分木<br>
+	 * 区画は番号で表し，中心・幅・区画内のノードの数と座標の和を配列で持つ．
+	 * 子の区画は 4 つ続けて確保し，その先頭の番号を child に入れる．
+	 */
+	static class QuadTree {
+		// これより深くは分けず，同じ葉にまとめる(座標が重なったノードのため)
+		static final int MAX_DEPTH = 48;
+
+		// 使っている区画の数
+		int size;
+		// 区画の中心と幅の半分
+		double[] centerX;
+		double[] centerY;
+		double[] half;
+		// 区画内のノードの数と座標の和(重心 = 和 / 数)
+		double[] mass;
+		double[] sumX;
+		double[] sumY;
+		// 子の区画の先頭の番号．葉なら -1
+		int[] child;
+		// 葉に入っているノードの番号．空の葉なら -1(MAX_DEPTH の葉では最初に入れたノード)
+		int[] body;
+		// ノードの番号 -> そのノードが入っている葉．leafBuild が builds と等しいときだけ有効
+		int[] leaf = new int[0];
+		int[] leafBuild = new int[0];
+		// 木を作った回数(作り直すときに leaf を消さずに済ませる)
+		int builds;
+
+		QuadTree(int n) {
+			allocate(4 * n + 4 * MAX_DEPTH + 1);
+		}
+
+		private void allocate(int capacity) {
+			centerX = new double[capacity];
+			centerY = new double[capacity];
+			half = new double[capacity];
+			mass = new double[capacity];
+			sumX = new double[capacity];
+			sumY = new double[capacity];
+			child = new int[capacity];
+			body = new int[capacity];
+		}
+
+		private void grow() {
+			int capacity = centerX.length * 2;
+			centerX = Arrays.copyOf(centerX, capacity);
+			centerY = Arrays.copyOf(centerY, capacity);
+			half = Arrays.copyOf(half, capacity);
+			mass = Arrays.copyOf(mass, capacity);
+			sumX = Arrays.copyOf(sumX, capacity);
+			sumY = Arrays.copyOf(sumY, capacity);
+			child = Arrays.copyOf(child, capacity);
+			body = Arrays.copyOf(body, capacity);
+		}
+
+		/**
+		 * ノードの座標から木を作り直す
+		 *
+		 * @param members
+		 *            木に入れるノードの番号．null なら 0 番から n - 1 番まで
+		 * @param n
+		 *            木に入れるノードの数
+		 */
+		void build(double[] x, double[] y, int[] members, int n) {
+			double minX = Double.POSITIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			for (int p = 0; p < n; p++) {
+				int i = (members != null) ? members[p] : p;
+				minX = Math.min(minX, x[i]);
+				minY = Math.min(minY, y[i]);
+				maxX = Math.max(maxX, x[i]);
+				maxY = Math.max(maxY, y[i]);
+			}
+			if (leaf.length < x.length) {
+				leaf = new int[x.length];
+				leafBuild = new int[x.length];
+			}
+			builds++;
+			size = 0;
+			if (n == 0) {
+				return;
+			}
+			newCell((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 + 1);
+			for (int p = 0; p < n; p++) {
+				insert((members != null) ? members[p] : p, x, y);
+			}
+		}
+
+		private int newCell(double cx, double cy, double h) {
+			int c = size++;
+			centerX[c] = cx;
+			centerY[c] = cy;
+			half[c] = h;
+			mass[c] = 0;
+			sumX[c] = 0;
+			sumY[c] = 0;
+			child[c] = -1;
+			body[c] = -1;
+			return c;
+		}
+
+		private void insert(int i, double[] x, double[] y) {
+			// 一回の挿入で分ける区画の数は深さの 4 倍まで
+			if (centerX.length < size + 4 * MAX_DEPTH) {
+				grow();
+			}
+			int c = 0;
+			for (int depth = 0;; depth++) {
+				mass[c] += 1;
+				sumX[c] += x[i];
+				sumY[c] += y[i];
+				if (child[c] >= 0) {
+					c = child[c] + quadrant(c, x[i], y[i]);
+					continue;
+				}
+				if (body[c] < 0) {
+					body[c] = i;
+					setLeaf(i, c);
+					return;
+				}
+				if (depth >= MAX_DEPTH) {
+					// 同じ葉にまとめる
+					setLeaf(i, c);
+					return;
+				}
+				// 葉を 4 つに分け，入っていたノードを子の区画に移す
+				int j = body[c];
+				double h = half[c] / 2;
+				int first = newCell(centerX[c] - h, centerY[c] - h, h);
+				newCell(centerX[c] + h, centerY[c] - h, h);
+				newCell(centerX[c] - h, centerY[c] + h, h);
+				newCell(centerX[c] + h, centerY[c] + h, h);
+				child[c] = first;
+				body[c] = -1;
+				int q = first + quadrant(c, x[j], y[j]);
+				mass[q] = 1;
+				sumX[q] = x[j];
+				sumY[q] = y[j];
+				body[q] = j;
+				setLeaf(j, q);
+				c = first + quadrant(c, x[i], y[i]);
+			}
+		}
+
+		/**
+		 * ノード i が葉 c に入っているか
+		 */
+		boolean contains(int c, int i) {
+			return i < leaf.length && leafBuild[i] == builds && leaf[i] == c;
+		}
+
+		private void setLeaf(int i, int c) {
+			leaf[i] = c;
+			leafBuild[i] = builds;
+		}
+
+		private int quadrant(int c, double px, double py) {
+			return (px >= centerX[c] ? 1 : 0) + (py >= centerY[c] ? 2 : 0);
+		}
+	}
+}
@@ -1,4 +1,6 @@
 import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -10,8 +12,26 @@ import java.util.Map;
 public class Group8SemanticNet {
 	public static void main(String args[]) {
 		// 課題5-1追加分、SemanticNetLoadFiles.java
-		SemanticNetLoadFiles hoge = new SemanticNetLoadFiles();
-		SemanticNet semnet = hoge.SNFilesLoader("SemanticNet");
+		// ファイルが変わっていなければ前回のスナップショットから読み込む
+		File dir = new File("SemanticNet");
+		File snapshot = new File("SemanticNet.snapshot");
+		SemanticNet semnet = null;
+		if (SemanticNetSnapshot.isUpToDate(snapshot, dir)) {
+			try {
+				semnet = SemanticNetSnapshot.load(snapshot);
+			} catch (IOException e) {
+				System.out.println(e);
+			}
+		}
+		if (semnet == null) {
+			SemanticNetLoadFiles hoge = new SemanticNetLoadFiles();
+			semnet = hoge.SNFilesBulkLoader("SemanticNet");
+			try {
+				SemanticNetSnapshot.write(semnet, snapshot, dir);
+			} catch (IOException e) {
+				System.out.println(e);
+			}
+		}
 		semnet.printLinks();
 		semnet.printNodes();
 		Map<String, Point> pointTable_hoge = new HashMap<>();
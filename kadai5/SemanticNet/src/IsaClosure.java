@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * is-a リンクでたどれるノードの集合(閉包)を保持するクラス<br>
+ * ノードごとに上位・下位のノードの番号の集合をビット集合で持ち，
+ * is-a リンクが加わるたびに関係するノードの集合だけを更新する．
+ * セマンティックネットに登録されたリンクだけを対象にし，継承によって作成されたリンクは含めない．
+ */
+class IsaClosure {
+	// 辞書での番号 -> is-a でたどれる上位のノードの番号
+	private ArrayList<BitSet> ancestors;
+	// 辞書での番号 -> is-a で自分に至る下位のノードの番号
+	private ArrayList<BitSet> descendants;
+	// 辞書での番号 -> ノード(is-a リンクに現れたものだけ)
+	private ArrayList<Node> nodes;
+
+	IsaClosure() {
+		ancestors = new ArrayList<BitSet>();
+		descendants = new ArrayList<BitSet>();
+		nodes = new ArrayList<Node>();
+	}
+
+	/**
+	 * is-a リンクが加わったときに呼ぶ<br>
+	 * tail とその下位のノードに，head とその上位のノードを上位として加える．
+	 *
+	 * @param theLink
+	 *            加わった is-a リンク
+	 */
+	public void addIsaLink(Link theLink) {
+		Node tail = theLink.getTail();
+		Node head = theLink.getHead();
+		register(tail);
+		register(head);
+		BitSet up = (BitSet) ancestors.get(head.getId()).clone();
+		up.set(head.getId());
+		BitSet down = (BitSet) descendants.get(tail.getId()).clone();
+		down.set(tail.getId());
+		for (int i = down.nextSetBit(0); i >= 0; i = down.nextSetBit(i + 1)) {
+			ancestors.get(i).or(up);
+		}
+		for (int i = up.nextSetBit(0); i >= 0; i = up.nextSetBit(i + 1)) {
+			descendants.get(i).or(down);
+		}
+	}
+
+	/**
+	 * theNode から is-a をたどって theSuper に至るか
+	 */
+	public boolean isA(Node theNode, Node theSuper) {
+		BitSet set = get(ancestors, theNode);
+		return set != null && set.get(theSuper.getId());
+	}
+
+	/**
+	 * theNode から is-a でたどれる上位のノード(theNode 自身は含まない)
+	 */
+	public ArrayList<Node> getAncestors(Node theNode) {
+		return toNodes(get(ancestors, theNode), theNode);
+	}
+
+	/**
+	 * is-a をたどると theNode に至る下位のノード(theNode 自身は含まない)
+	 */
+	public ArrayList<Node> getDescendants(Node theNode) {
+		return toNodes(get(descendants, theNode), theNode);
+	}
+
+	/**
+	 * is-a をたどると theNode に至る下位のノードの数(theNode 自身は含まない)
+	 */
+	public int countDescendants(Node theNode) {
+		BitSet set = get(descendants, theNode);
+		if (set == null) {
+			return 0;
+		}
+		return set.cardinality() - (set.get(theNode.getId()) ? 1 : 0);
+	}
+
+	private void register(Node theNode) {
+		int id = theNode.getId();
+		while (nodes.size() <= id) {
+			nodes.add(null);
+			ancestors.add(null);
+			descendants.add(null);
+		}
+		if (nodes.get(id) == null) {
+			nodes.set(id, theNode);
+			ancestors.set(id, new BitSet());
+			descendants.set(id, new BitSet());
+		}
+	}
+
+	private static BitSet get(ArrayList<BitSet> closure, Node theNode) {
+		int id = theNode.getId();
+		return (id < closure.size()) ? closure.get(id) : null;
+	}
+
+	private ArrayList<Node> toNodes(BitSet set, Node theNode) {
+		ArrayList<Node> result = new ArrayList<Node>();
+		if (set == null) {
+			return result;
+		}
+		for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+			// is-a が循環しているときは自分自身も含まれる
+			if (i != theNode.getId()) {
+				result.add(nodes.get(i));
+			}
+		}
+		return result;
+	}
+}
@@ -1,8 +1,6 @@
-import java.util.ArrayList;
-import java.util.HashMap;
-
 public class Link {
-	String label;
+	int label;// リンクの関係名の辞書での番号
+	String queryLabel;// 質問リンクの関係名(質問リンクでないときは null)
 	Node tail;// 矢印の付け根側のノード名
 	Node head;// 矢印の先端側のノード名
 	boolean inheritance;// 継承によって作成されたリンクかどうか
@@ -20,29 +18,17 @@ public class Link {
 	 *            対象とするセマンティックネット
 	 */
 	Link(String theLabel, String theTail, String theHead, SemanticNet sn) {
-		label = theLabel;
-		HashMap<String, Node> nodesNameTable = sn.getNodesNameTable();
-		ArrayList<Node> nodes = sn.getNodes();
-
-		tail = (Node) nodesNameTable.get(theTail);
-		if (tail == null) { // セマンティックネットにtailノードが無いとき
-			tail = new Node(theTail);
-			nodes.add(tail);
-			nodesNameTable.put(theTail, tail);
-		}
-
-		head = (Node) nodesNameTable.get(theHead);
-		if (head == null) {// セマンティックネットにheadノードが無いとき
-			head = new Node(theHead);
-			nodes.add(head);
-			nodesNameTable.put(theHead, head);
-		}
+		label = sn.getDictionary().id(theLabel);
+		// セマンティックネットにノードが無いときは作られる
+		tail = sn.getNode(theTail);
+		head = sn.getNode(theHead);
 		inheritance = false;
 	}
 
 	// For constructing query.
 	/**
-	 * 質問リンク作成用コンストラクタ
+	 * 質問リンク作成用コンストラクタ<br>
+	 * 質問の名前は辞書に登録せず，質問のときにセマンティックネットの辞書で引く．
 	 *
 	 * @param theLabel
 	 *            リンクの関係名
@@ -52,16 +38,38 @@ public class Link {
 	 *            矢印の先端側のノード名
 	 */
 	Link(String theLabel, String theTail, String theHead) {
-		label = theLabel;
+		label = "is-a".equals(theLabel) ? TermDictionary.ISA : TermDictionary.UNKNOWN;
+		queryLabel = theLabel;
 		tail = new Node(theTail);
 		head = new Node(theHead);
 		inheritance = false;
 	}
 
+	/**
+	 * 継承用のリンク作成用コンストラクタ
+	 *
+	 * @param theLabel
+	 *            リンクの関係名の番号
+	 * @param theTail
+	 *            矢印の付け根側のノード
+	 * @param theHead
+	 *            矢印の先端側のノード
+	 */
+	Link(int theLabel, Node theTail, Node theHead) {
+		label = theLabel;
+		tail = theTail;
+		head = theHead;
+		inheritance = false;
+	}
+
 	public void setInheritance(boolean value) {
 		inheritance = value;
 	}
 
+	public boolean isInheritance() {
+		return inheritance;
+	}
+
 	public Node getTail() {
 		return tail;
 	}
@@ -71,15 +79,22 @@ public class Link {
 	}
 
 	public String getLabel() {
+		if (queryLabel != null) {
+			return queryLabel;
+		}
+		return tail.getDictionary().term(label);
+	}
+
+	public int getLabelId() {
 		return label;
 	}
 
 	public String getFullName() {
-		return tail.getName() + " " + label + " " + head.getName();
+		return tail.getName() + " " + getLabel() + " " + head.getName();
 	}
 
 	public String toString() {
-		String result = tail.getName() + "  =" + label + "=>  " + head.getName();
+		String result = tail.getName() + "  =" + getLabel() + "=>  " + head.getName();
 		if (!inheritance) {
 			return result;
 		} else {
@@ -0,0 +1,227 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * セマンティックネットのリンクの索引<br>
+ * tail・label・head の組み合わせ(SPO, POS, OSP)ごとにリンクを分けて持ち，
+ * 質問の定数部分に一致するリンクだけを取り出せるようにする．
+ * 名前は辞書での番号で扱う．
+ * ? で始まる名前や空白を含む名前のあるリンクは，項ごとではなく文字列として照合されるので，
+ * 索引には分けずに別に持ち，定数を含むどの質問にも候補として返す．
+ */
+class LinkIndex {
+	// 変数(何にでも一致する)を表す番号
+	static final int ANY = -1;
+
+	// 外側は辞書での番号で引くリスト
+	// tail -> label -> リンク
+	private ArrayList<HashMap<Integer, ArrayList<Link>>> spo;
+	// label -> head -> リンク
+	private ArrayList<HashMap<Integer, ArrayList<Link>>> pos;
+	// head -> tail -> リンク
+	private ArrayList<HashMap<Integer, ArrayList<Link>>> osp;
+	// ? で始まる名前や空白を含む名前のあるリンク
+	private ArrayList<Link> irregular;
+	// リンクの名前を登録した辞書
+	private TermDictionary dictionary;
+
+	/**
+	 * @param theDictionary
+	 *            リンクの名前を登録した辞書
+	 */
+	LinkIndex(TermDictionary theDictionary) {
+		dictionary = theDictionary;
+		spo = new ArrayList<HashMap<Integer, ArrayList<Link>>>();
+		pos = new ArrayList<HashMap<Integer, ArrayList<Link>>>();
+		osp = new ArrayList<HashMap<Integer, ArrayList<Link>>>();
+		irregular = new ArrayList<Link>();
+	}
+
+	/**
+	 * リンクを索引に登録する
+	 *
+	 * @param theLink
+	 *            登録するリンク
+	 */
+	public void add(Link theLink) {
+		int tail = theLink.getTail().getId();
+		int label = theLink.getLabelId();
+		int head = theLink.getHead().getId();
+		if (!dictionary.isConstant(tail) || !dictionary.isConstant(label) || !dictionary.isConstant(head)) {
+			irregular.add(theLink);
+			return;
+		}
+		put(spo, tail, label, theLink);
+		put(pos, label, head, theLink);
+		put(osp, head, tail, theLink);
+	}
+
+	/**
+	 * 質問の定数部分に一致する可能性のあるリンクを返す<br>
+	 * 引数が ANY の部分は変数(何にでも一致する)として扱う．辞書に無い名前には何も一致しない．
+	 * ? で始まる名前や空白を含む名前のあるリンクは，いつも候補に含める．
+	 *
+	 * @param theTail
+	 *            矢印の付け根側のノード名の番号
+	 * @param theLabel
+	 *            リンクの関係名の番号
+	 * @param theHead
+	 *            矢印の先端側のノード名の番号
+	 * @return 候補となるリンクのリスト．すべて変数のときは null
+	 */
+	public List<Link> lookup(int theTail, int theLabel, int theHead) {
+		if (theTail == ANY && theLabel == ANY && theHead == ANY) {
+			return null;
+		}
+		List<Link> candidates = lookupConstant(theTail, theLabel, theHead);
+		if (irregular.isEmpty()) {
+			return candidates;
+		}
+		ArrayList<Link> result = new ArrayList<Link>(candidates.size() + irregular.size());
+		result.addAll(candidates);
+		result.addAll(irregular);
+		return result;
+	}
+
+	/**
+	 * 項ごとに照合できるリンクのうち，質問の定数部分に一致するものを返す
+	 */
+	private List<Link> lookupConstant(int theTail, int theLabel, int theHead) {
+		// 2つ以上決まっているときは，一番短いリストを使う
+		List<Link> best = null;
+		if (theTail != ANY && theLabel != ANY) {
+			best = shorter(best, get(spo, theTail, theLabel));
+		}
+		if (theLabel != ANY && theHead != ANY) {
+			best = shorter(best, get(pos, theLabel, theHead));
+		}
+		if (theHead != ANY && theTail != ANY) {
+			best = shorter(best, get(osp, theHead, theTail));
+		}
+		if (best != null) {
+			return best;
+		}
+		// 1つだけ決まっているとき
+		if (theTail != ANY) {
+			return getAll(spo, theTail);
+		} else if (theLabel != ANY) {
+			return getAll(pos, theLabel);
+		} else {
+			return getAll(osp, theHead);
+		}
+	}
+
+	/**
+	 * ? で始まる名前や空白を含む名前のあるリンクが登録されているか
+	 */
+	public boolean hasIrregular() {
+		return !irregular.isEmpty();
+	}
+
+	/**
+	 * lookup が返すリンクの数を，リストを作らずに求める
+	 *
+	 * @return 候補となるリンクの数．すべて変数のときは -1
+	 */
+	public int count(int theTail, int theLabel, int theHead) {
+		if (theTail == ANY && theLabel == ANY && theHead == ANY) {
+			return -1;
+		}
+		return countConstant(theTail, theLabel, theHead) + irregular.size();
+	}
+
+	private int countConstant(int theTail, int theLabel, int theHead) {
+		int best = -1;
+		if (theTail != ANY && theLabel != ANY) {
+			best = smaller(best, get(spo, theTail, theLabel).size());
+		}
+		if (theLabel != ANY && theHead != ANY) {
+			best = smaller(best, get(pos, theLabel, theHead).size());
+		}
+		if (theHead != ANY && theTail != ANY) {
+			best = smaller(best, get(osp, theHead, theTail).size());
+		}
+		if (best >= 0) {
+			return best;
+		}
+		if (theTail != ANY) {
+			return countAll(spo, theTail);
+		} else if (theLabel != ANY) {
+			return countAll(pos, theLabel);
+		} else {
+			return countAll(osp, theHead);
+		}
+	}
+
+	private static void put(ArrayList<HashMap<Integer, ArrayList<Link>>> index, int key1, int key2,
+			Link theLink) {
+		while (index.size() <= key1) {
+			index.add(null);
+		}
+		HashMap<Integer, ArrayList<Link>> inner = inner(index, key1);
+		if (inner == null) {
+			inner = new HashMap<Integer, ArrayList<Link>>();
+			index.set(key1, inner);
+		}
+		ArrayList<Link> list = inner.get(key2);
+		if (list == null) {
+			list = new ArrayList<Link>();
+			inner.put(key2, list);
+		}
+		list.add(theLink);
+	}
+
+	private static List<Link> get(ArrayList<HashMap<Integer, ArrayList<Link>>> index, int key1,
+			int key2) {
+		HashMap<Integer, ArrayList<Link>> inner = inner(index, key1);
+		if (inner != null) {
+			ArrayList<Link> list = inner.get(key2);
+			if (list != null) {
+				return list;
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	private static List<Link> getAll(ArrayList<HashMap<Integer, ArrayList<Link>>> index, int key1) {
+		HashMap<Integer, ArrayList<Link>> inner = inner(index, key1);
+		if (inner == null) {
+			return Collections.emptyList();
+		}
+		if (inner.size() == 1) {
+			return inner.values().iterator().next();
+		}
+		ArrayList<Link> result = new ArrayList<Link>();
+		for (ArrayList<Link> list : inner.values()) {
+			result.addAll(list);
+		}
+		return result;
+	}
+
+	private static int countAll(ArrayList<HashMap<Integer, ArrayList<Link>>> index, int key1) {
+		HashMap<Integer, ArrayList<Link>> inner = inner(index, key1);
+		int count = 0;
+		if (inner != null) {
+			for (ArrayList<Link> list : inner.values()) {
+				count += list.size();
+			}
+		}
+		return count;
+	}
+
+	private static HashMap<Integer, ArrayList<Link>> inner(ArrayList<HashMap<Integer, ArrayList<Link>>> index,
+			int key1) {
+		// 辞書に無い名前 (TermDictionary.UNKNOWN) には何も登録されていない
+		return (key1 >= 0 && key1 < index.size()) ? index.get(key1) : null;
+	}
+
+	private static List<Link> shorter(List<Link> list1, List<Link> list2) {
+		return (list1 == null || list2.size() < list1.size()) ? list2 : list1;
+	}
+
+	private static int smaller(int count1, int count2) {
+		return (count1 < 0 || count2 < count1) ? count2 : count1;
+	}
+}
@@ -2,31 +2,56 @@ import java.util.ArrayList;
 
 class Node {
 	String name;
+	// 辞書での番号
+	int id;
+	// 名前を登録した辞書(質問リンクのノードは null)
+	TermDictionary dictionary;
 
 	// 自分から出ていくリンク
 	ArrayList<Link> departFromMeLinks;
 	// 自分に入ってくるリンク
 	ArrayList<Link> arriveAtMeLinks;
+	// 自分に is-a で入ってくるノード
+	ArrayList<Node> isaTails;
 
+	/**
+	 * 辞書に登録した名前のノードを作る
+	 *
+	 * @param theId
+	 *            辞書での番号
+	 * @param theDictionary
+	 *            名前を登録した辞書
+	 */
+	Node(int theId, TermDictionary theDictionary) {
+		id = theId;
+		dictionary = theDictionary;
+		name = theDictionary.term(theId);
+		departFromMeLinks = new ArrayList<Link>();
+		arriveAtMeLinks = new ArrayList<Link>();
+		isaTails = new ArrayList<Node>();
+	}
+
+	/**
+	 * 質問リンクのノードを作る．辞書には登録しない
+	 *
+	 * @param theName
+	 *            ノード名
+	 */
 	Node(String theName) {
+		id = TermDictionary.UNKNOWN;
 		name = theName;
 		departFromMeLinks = new ArrayList<Link>();
 		arriveAtMeLinks = new ArrayList<Link>();
+		isaTails = new ArrayList<Node>();
 	}
 
 	/**
-	 * このノードに入ってくるis-aのノードをリストを取得する
+	 * このノードに入ってくるis-aのノードをリストを取得する<br>
+	 * リンクを登録するときに作っておいたリストをそのまま返すので，変更しないこと．
 	 *
 	 * @return このノードに入ってくるis-aのノードのリスト
 	 */
 	public ArrayList<Node> getISATails() {
-		ArrayList<Node> isaTails = new ArrayList<Node>();
-		for (int i = 0; i < arriveAtMeLinks.size(); i++) {
-			Link theLink = (Link) arriveAtMeLinks.get(i);
-			if ("is-a".equals(theLink.getLabel())) {
-				isaTails.add(theLink.getTail());
-			}
-		}
 		return isaTails;
 	}
 
@@ -40,6 +65,9 @@ class Node {
 
 	public void addArriveAtMeLinks(Link theLink) {
 		arriveAtMeLinks.add(theLink);
+		if (theLink.getLabelId() == TermDictionary.ISA) {
+			isaTails.add(theLink.getTail());
+		}
 	}
 
 	public ArrayList<Link> getArriveAtMeLinks() {
@@ -50,6 +78,14 @@ class Node {
 		return name;
 	}
 
+	public int getId() {
+		return id;
+	}
+
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
 	public String toString() {
 		return name;
 	}
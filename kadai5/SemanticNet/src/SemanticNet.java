@@ -1,7 +1,8 @@
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.StringTokenizer;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 /***
  * 意味ネットワーク (Semantic Net)
@@ -10,12 +11,52 @@ import java.util.StringTokenizer;
 public class SemanticNet {
 	ArrayList<Link> links;
 	ArrayList<Node> nodes;
-	HashMap<String, Node> nodesNameTable;
+	// ノード名と関係名の辞書
+	TermDictionary dictionary;
+	// 辞書での番号 -> ノード(関係名だけの番号は null)
+	ArrayList<Node> nodesById;
+	// 質問に一致するリンクを探すための索引(index() で links に追いつかせてから使う)
+	LinkIndex linkIndex;
+	// linkIndex に登録済みのリンクの数
+	int indexedLinks;
+	// 質問のリストを解くための結合器
+	QueryJoiner joiner;
+	// 継承したリンクを作らず，質問のときに is-a をたどって求めるか
+	boolean virtualInheritance;
+	// is-a でたどれるノードのキャッシュ(virtualInheritance のときに使う)
+	IsaClosure isaClosure;
 
 	SemanticNet() {
+		this(false);
+	}
+
+	/**
+	 * セマンティックネットを作る
+	 *
+	 * @param theVirtualInheritance
+	 *            true なら addLink で継承したリンクを作らず，質問のときに is-a をたどって求める
+	 */
+	SemanticNet(boolean theVirtualInheritance) {
+		virtualInheritance = theVirtualInheritance;
+		isaClosure = new IsaClosure();
 		links = new ArrayList<Link>();
 		nodes = new ArrayList<Node>();
-		nodesNameTable = new HashMap<String, Node>();
+		dictionary = new TermDictionary();
+		nodesById = new ArrayList<Node>();
+		linkIndex = new LinkIndex(dictionary);
+		joiner = new QueryJoiner(new QueryJoiner.Source() {
+			public List<HashMap<String, String>> query(String[] theTerms) {
+				return queryTerms(theTerms);
+			}
+
+			public int estimate(String[] theTerms) {
+				return estimateTerms(theTerms);
+			}
+
+			public boolean substitutable(String[] theTerms) {
+				return !index().hasIrregular();
+			}
+		});
 	}
 
 	/**
@@ -33,25 +74,20 @@ public class SemanticNet {
 	}
 
 	/**
-	 * 質問をする
+	 * 質問をする<br>
+	 * 候補の少ない質問から順に解き，束縛された変数の値を次の質問に代入して問い合わせる．
 	 *
 	 * @param theQueries
 	 *            質問のリスト
 	 * @return 変数束縛情報のリスト(解のリスト)
 	 */
-	public ArrayList doQuery(ArrayList theQueries) {
-		ArrayList bindingsList = new ArrayList();
+	public ArrayList<HashMap<String, String>> doQuery(ArrayList<Link> theQueries) {
+		ArrayList<String[]> clauses = new ArrayList<String[]>();
 		for (int i = 0; i < theQueries.size(); i++) {
-			Link theQuery = (Link) theQueries.get(i);
-			ArrayList bindings = queryLink(theQuery);
-			if (bindings.size() != 0) {
-				bindingsList.add(bindings);
-			} else {
-				// 失敗したとき
-				return (new ArrayList());
-			}
+			Link theQuery = theQueries.get(i);
+			clauses.add(new String[] { theQuery.getTail().getName(), theQuery.getLabel(), theQuery.getHead().getName() });
 		}
-		return join(bindingsList);
+		return joiner.doQuery(clauses);
 	}
 
 	/**
@@ -61,20 +97,181 @@ public class SemanticNet {
 	 *            質問
 	 * @return 変数束縛情報
 	 */
-	public ArrayList queryLink(Link theQuery) {
-		ArrayList bindings = new ArrayList();
-		for (int i = 0; i < links.size(); i++) {
-			Link theLink = (Link) links.get(i);
-			HashMap<String, String> binding = new HashMap<String, String>();
-			String theQueryString = theQuery.getFullName();
-			String theLinkString = theLink.getFullName();
-			if ((new Matcher()).matching(theQueryString, theLinkString, binding)) {
+	public ArrayList<HashMap<String, String>> queryLink(Link theQuery) {
+		return queryTerms(new String[] { theQuery.getTail().getName(), theQuery.getLabel(), theQuery.getHead().getName() });
+	}
+
+	/**
+	 * 単体の質問をする
+	 *
+	 * @param theTerms
+	 *            質問の各項 (tail, label, head)
+	 * @return 変数束縛情報
+	 */
+	ArrayList<HashMap<String, String>> queryTerms(String[] theTerms) {
+		ArrayList<HashMap<String, String>> bindings = new ArrayList<HashMap<String, String>>();
+		TriplePattern pattern = new TriplePattern(theTerms, dictionary);
+		// 定数部分が一致するリンクだけを調べる
+		List<Link> candidates = virtualInheritance ? inheritedCandidateLinks(theTerms) : candidateLinks(theTerms);
+		for (int i = 0; i < candidates.size(); i++) {
+			HashMap<String, String> binding = pattern.match(candidates.get(i));
+			if (binding != null) {
 				bindings.add(binding);
 			}
 		}
 		return bindings;
 	}
 
+	/**
+	 * 質問の定数部分に一致する可能性のあるリンクを索引から取り出す<br>
+	 * 空白を含む項のある質問は文字列として照合するので，すべてのリンクを対象にする．
+	 *
+	 * @param theTerms
+	 *            質問の各項 (tail, label, head)
+	 * @return 候補となるリンクのリスト
+	 */
+	List<Link> candidateLinks(String[] theTerms) {
+		if (!tokens(theTerms)) {
+			return links;
+		}
+		List<Link> candidates = index().lookup(termId(theTerms[0]), termId(theTerms[1]), termId(theTerms[2]));
+		if (candidates == null) {
+			// すべて変数のときは全リンクが対象
+			return links;
+		}
+		return candidates;
+	}
+
+	/**
+	 * 継承したリンクも含めて，質問の定数部分に一致する可能性のあるリンクを求める<br>
+	 * 登録されたリンクの tail から is-a でたどれる下位のノードには，そのリンクが継承されているものとする．
+	 *
+	 * @param theTerms
+	 *            質問の各項 (tail, label, head)
+	 * @return 候補となるリンクのリスト(継承したリンクはその都度作る)
+	 */
+	List<Link> inheritedCandidateLinks(String[] theTerms) {
+		int tail = termId(theTerms[0]);
+		if (tail == LinkIndex.ANY || !tokens(theTerms)) {
+			// 一致したリンクを tail の下位のノードすべてに継承させる
+			List<Link> candidates = candidateLinks(theTerms);
+			ArrayList<Link> result = new ArrayList<Link>(candidates);
+			for (int i = 0; i < candidates.size(); i++) {
+				Link theLink = candidates.get(i);
+				ArrayList<Node> descendants = isaClosure.getDescendants(theLink.getTail());
+				for (int j = 0; j < descendants.size(); j++) {
+					result.add(inheritedLink(theLink, descendants.get(j)));
+				}
+			}
+			return result;
+		}
+		// tail と tail の上位のノードのリンクを tail に継承させる
+		int label = termId(theTerms[1]);
+		int head = termId(theTerms[2]);
+		ArrayList<Link> result = new ArrayList<Link>(index().lookup(tail, label, head));
+		Node tailNode = getNode(tail);
+		if (tailNode != null) {
+			ArrayList<Node> ancestors = isaClosure.getAncestors(tailNode);
+			for (int i = 0; i < ancestors.size(); i++) {
+				Node ancestor = ancestors.get(i);
+				List<Link> inheritLinks = index().lookup(ancestor.getId(), label, head);
+				for (int j = 0; j < inheritLinks.size(); j++) {
+					// 索引の候補には tail の違うリンクも含まれるので，ここで確かめる
+					Link theLink = inheritLinks.get(j);
+					if (theLink.getTail() == ancestor) {
+						result.add(inheritedLink(theLink, tailNode));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * theNode を tail にした継承のリンクを作る
+	 */
+	static Link inheritedLink(Link theLink, Node theNode) {
+		Link newLink = new Link(theLink.getLabelId(), theNode, theLink.getHead());
+		newLink.setInheritance(true);
+		return newLink;
+	}
+
+	/**
+	 * 単体の質問に一致するリンクの数を見積もる
+	 *
+	 * @param theTerms
+	 *            質問の各項 (tail, label, head)
+	 * @return 見積もった数．見積もれないときは -1
+	 */
+	int estimateTerms(String[] theTerms) {
+		if (!tokens(theTerms)) {
+			return -1;
+		}
+		int tail = termId(theTerms[0]);
+		int label = termId(theTerms[1]);
+		int head = termId(theTerms[2]);
+		int count = index().count(tail, label, head);
+		if (!virtualInheritance || count < 0) {
+			return count;
+		}
+		if (tail == LinkIndex.ANY) {
+			// 一致したリンクは tail の下位のノードの数だけ継承される
+			List<Link> candidates = index().lookup(tail, label, head);
+			for (int i = 0; i < candidates.size(); i++) {
+				count += isaClosure.countDescendants(candidates.get(i).getTail());
+			}
+		} else {
+			Node tailNode = getNode(tail);
+			if (tailNode != null) {
+				ArrayList<Node> ancestors = isaClosure.getAncestors(tailNode);
+				for (int i = 0; i < ancestors.size(); i++) {
+					count += index().count(ancestors.get(i).getId(), label, head);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 質問のすべての項が空白を含まない一つのトークンか
+	 */
+	static boolean tokens(String[] theTerms) {
+		for (int i = 0; i < theTerms.length; i++) {
+			if (!TriplePattern.token(theTerms[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 変数なら LinkIndex.ANY，定数なら辞書での番号(辞書に無ければ TermDictionary.UNKNOWN)を返す
+	 */
+	int termId(String theToken) {
+		return theToken.startsWith("?") ? LinkIndex.ANY : dictionary.lookup(theToken);
+	}
+
+	/**
+	 * リンクを一覧に登録する(索引には次の質問のときに登録される)
+	 *
+	 * @param theLink
+	 *            登録するリンク
+	 */
+	void storeLink(Link theLink) {
+		links.add(theLink);
+	}
+
+	/**
+	 * まだ索引に登録していないリンクを登録してから索引を返す<br>
+	 * 読み込みのときには索引を作らず，最初の質問のときにまとめて作る．
+	 */
+	LinkIndex index() {
+		while (indexedLinks < links.size()) {
+			linkIndex.add(links.get(indexedLinks++));
+		}
+		return linkIndex;
+	}
+
 	/**
 	 * 変数束縛情報のリストを全て結合する
 	 *
@@ -82,30 +279,13 @@ public class SemanticNet {
 	 *            変数束縛情報のリストのリスト
 	 * @return 結合後の変数束縛情報のリスト
 	 */
-	public ArrayList join(ArrayList theBindingsList) {
-		int size = theBindingsList.size();
-		switch (size) {
-		case 0:
-			// 失敗している時？
-			break;
-		case 1:
-			return (ArrayList) theBindingsList.get(0);
-		case 2:
-			ArrayList bindings1 = (ArrayList) theBindingsList.get(0);
-			ArrayList bindings2 = (ArrayList) theBindingsList.get(1);
-			return joinBindings(bindings1, bindings2);
-		default:
-			bindings1 = (ArrayList) theBindingsList.get(0);
-			theBindingsList.remove(bindings1);
-			bindings2 = join(theBindingsList);
-			return joinBindings(bindings1, bindings2);
-		}
-		// ダミー
-		return (ArrayList) null;
+	public ArrayList<HashMap<String, String>> join(List<List<HashMap<String, String>>> theBindingsList) {
+		return QueryJoiner.join(theBindingsList);
 	}
 
 	/**
-	 * 変数束縛情報のリストを結合する
+	 * 変数束縛情報のリストを結合する<br>
+	 * 共通する変数の値でハッシュ結合する．
 	 *
 	 * @param theBindings1
 	 *            変数束縛情報のリスト1
@@ -113,19 +293,9 @@ public class SemanticNet {
 	 *            変数束縛情報のリスト2
 	 * @return 結合後の変数束縛情報のリスト
 	 */
-	public ArrayList joinBindings(ArrayList theBindings1, ArrayList theBindings2) {
-		ArrayList resultBindings = new ArrayList();
-		for (int i = 0; i < theBindings1.size(); i++) {
-			HashMap<String, String> theBinding1 = (HashMap) theBindings1.get(i);
-			for (int j = 0; j < theBindings2.size(); j++) {
-				HashMap<String, String> theBinding2 = (HashMap) theBindings2.get(j);
-				HashMap<String, String> resultBinding = joinBinding(theBinding1, theBinding2);
-				if (resultBinding.size() != 0) {
-					resultBindings.add(resultBinding);
-				}
-			}
-		}
-		return resultBindings;
+	public ArrayList<HashMap<String, String>> joinBindings(List<HashMap<String, String>> theBindings1,
+			List<HashMap<String, String>> theBindings2) {
+		return QueryJoiner.joinBindings(theBindings1, theBindings2);
 	}
 
 	/**
@@ -168,7 +338,8 @@ public class SemanticNet {
 	/**
 	 * セマンティックネットにリンクを加える<br>
 	 * 例: Ito =is-a=> NIT-student:<br>
-	 * tail : Ito, head : NIT-student, label: is-a.
+	 * tail : Ito, head : NIT-student, label: is-a.<br>
+	 * virtualInheritance のときは継承したリンクを作らない．
 	 *
 	 * @param theLink
 	 *            加えるリンク
@@ -176,27 +347,95 @@ public class SemanticNet {
 	public void addLink(Link theLink) {
 		Node tail = theLink.getTail();
 		Node head = theLink.getHead();
-		links.add(theLink);
+		storeLink(theLink);
 
-		// 性質の継承
-		if ("is-a".equals(theLink.getLabel())) {
+		// 性質の継承(virtualInheritance のときは質問のときに求める)
+		if (!virtualInheritance && theLink.getLabelId() == TermDictionary.ISA) {
 			// head のすべてのリンクを is-a をたどってすべてのノードに継承．
 			ArrayList<Node> tmp = new ArrayList<Node>();
 			tmp.add(tail);
 			recursiveInheritance(head.getDepartFromMeLinks(), tmp);
 		}
 		// theLink を is-a をたどってすべてのノードに継承させる
-		ArrayList<Link> tmp = new ArrayList<Link>();
-		tmp.add(theLink);
-		recursiveInheritance(tmp, tail.getISATails());
+		if (!virtualInheritance) {
+			ArrayList<Link> tmp = new ArrayList<Link>();
+			tmp.add(theLink);
+			recursiveInheritance(tmp, tail.getISATails());
+		}
 
 		// 関係を head と tail に登録．
 		head.addArriveAtMeLinks(theLink);
 		tail.addDepartFromMeLinks(theLink);
+		if (theLink.getLabelId() == TermDictionary.ISA) {
+			isaClosure.addIsaLink(theLink);
+		}
+	}
+
+	/**
+	 * リンクをまとめて加える<br>
+	 * 空のセマンティックネットに加えるときは，すべてのリンクを登録してから継承を一度だけ行う．
+	 * 継承したリンクは (リンク, 下位のノード) の組ごとに一つずつ作られる．
+	 * すでにリンクがあるときは，一つずつ addLink で加える．
+	 *
+	 * @param theTriples
+	 *            加えるリンクの (関係名, tail のノード名, head のノード名) のリスト
+	 */
+	public void addLinks(List<String[]> theTriples) {
+		if (!links.isEmpty()) {
+			for (int i = 0; i < theTriples.size(); i++) {
+				String[] triple = theTriples.get(i);
+				addLink(new Link(triple[0], triple[1], triple[2], this));
+			}
+			return;
+		}
+		links.ensureCapacity(theTriples.size());
+		for (int i = 0; i < theTriples.size(); i++) {
+			String[] triple = theTriples.get(i);
+			addAssertedLink(new Link(triple[0], triple[1], triple[2], this));
+		}
+		if (!virtualInheritance) {
+			materializeInheritance();
+		}
+	}
+
+	/**
+	 * 継承を行わずにリンクを登録する<br>
+	 * 空のセマンティックネットにリンクをまとめて加えるときに使い，
+	 * 最後に materializeInheritance を呼ぶ(virtualInheritance のときは不要)．
+	 *
+	 * @param theLink
+	 *            加えるリンク
+	 */
+	void addAssertedLink(Link theLink) {
+		storeLink(theLink);
+		theLink.getHead().addArriveAtMeLinks(theLink);
+		theLink.getTail().addDepartFromMeLinks(theLink);
+		if (theLink.getLabelId() == TermDictionary.ISA) {
+			isaClosure.addIsaLink(theLink);
+		}
+	}
+
+	/**
+	 * 登録されているリンクを，tail から is-a でたどれる下位のノードすべてに継承させる
+	 */
+	void materializeInheritance() {
+		int size = links.size();
+		for (int i = 0; i < size; i++) {
+			Link theLink = links.get(i);
+			ArrayList<Node> descendants = isaClosure.getDescendants(theLink.getTail());
+			for (int j = 0; j < descendants.size(); j++) {
+				Node theNode = descendants.get(j);
+				Link newLink = inheritedLink(theLink, theNode);
+				storeLink(newLink);
+				theNode.addDepartFromMeLinks(newLink);
+			}
+		}
 	}
 
 	/**
-	 * 再帰的に継承を行う
+	 * 継承を行う<br>
+	 * theInheritNodes と，そこから is-a でたどれる下位のノードに一度ずつリンクを継承させる．
+	 * 下位のノードは is-a の閉包から引くので，グラフを再帰的にたどらない．
 	 *
 	 * @param theInheritLinks
 	 *            継承すべきリンク
@@ -204,33 +443,99 @@ public class SemanticNet {
 	 *            継承すべきリンクを継承するノード
 	 */
 	public void recursiveInheritance(ArrayList<Link> theInheritLinks, ArrayList<Node> theInheritNodes) {
+		LinkedHashSet<Node> inheritNodes = new LinkedHashSet<Node>();
 		for (int i = 0; i < theInheritNodes.size(); i++) {
 			Node theNode = (Node) theInheritNodes.get(i);
+			inheritNodes.add(theNode);
+			inheritNodes.addAll(isaClosure.getDescendants(theNode));
+		}
+		// 継承の途中で theInheritLinks に加わったリンクは継承しない
+		int size = theInheritLinks.size();
+		for (Node theNode : inheritNodes) {
 			// theNode 自体にリンクを継承．
-			for (int j = 0; j < theInheritLinks.size(); j++) {
+			for (int j = 0; j < size; j++) {
 				// theNode を tail にしたリンクを生成
 				Link theLink = (Link) theInheritLinks.get(j);
-				Link newLink = new Link(theLink.getLabel(), theNode.getName(), (theLink.getHead()).getName(), this);
+				Link newLink = new Link(theLink.getLabelId(), theNode, theLink.getHead());
 				newLink.setInheritance(true);
-				links.add(newLink);
+				storeLink(newLink);
 				theNode.addDepartFromMeLinks(newLink);
 			}
-			// theNode から is-a でたどれるノードにリンクを継承
-			ArrayList<Node> isaTails = theNode.getISATails();
-			if (isaTails.size() != 0) {
-				recursiveInheritance(theInheritLinks, isaTails);
-			}
 		}
 	}
 
+	/**
+	 * theSub から is-a リンクをたどって theSuper に至るか
+	 *
+	 * @param theSub
+	 *            下位のノード名
+	 * @param theSuper
+	 *            上位のノード名
+	 * @return 至るなら true
+	 */
+	public boolean isA(String theSub, String theSuper) {
+		Node sub = getNode(dictionary.lookup(theSub));
+		Node sup = getNode(dictionary.lookup(theSuper));
+		return sub != null && sup != null && isaClosure.isA(sub, sup);
+	}
+
 	public ArrayList<Node> getNodes() {
 		return nodes;
 	}
 
+	/**
+	 * ノード名 -> ノードの表を作って返す<br>
+	 * ノードは辞書での番号で管理しているので，表を変更してもセマンティックネットには反映されない．
+	 *
+	 * @return ノード名 -> ノードの表
+	 * @deprecated getNode(String) を使う
+	 */
+	@Deprecated
 	public HashMap<String, Node> getNodesNameTable() {
+		HashMap<String, Node> nodesNameTable = new HashMap<String, Node>();
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			nodesNameTable.put(node.getName(), node);
+		}
 		return nodesNameTable;
 	}
 
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * 辞書での番号に対するノードを取得する
+	 *
+	 * @param theId
+	 *            辞書での番号
+	 * @return ノード．無ければ null
+	 */
+	Node getNode(int theId) {
+		return (theId >= 0 && theId < nodesById.size()) ? nodesById.get(theId) : null;
+	}
+
+	/**
+	 * 名前に対するノードを取得する．無ければ作って登録する
+	 *
+	 * @param theName
+	 *            ノード名
+	 * @return ノード
+	 */
+	public Node getNode(String theName) {
+		int id = dictionary.id(theName);
+		while (nodesById.size() <= id) {
+			nodesById.add(null);
+		}
+		Node node = nodesById.get(id);
+		if (node == null) { // セマンティックネットにノードが無いとき
+			node = new Node(id, dictionary);
+			nodes.add(node);
+			nodesById.set(id, node);
+		}
+		return node;
+	}
+
 	public void printLinks() {
 		System.out.println("*** Links ***");
 		for (int i = 0; i < links.size(); i++) {
@@ -245,83 +550,3 @@ public class SemanticNet {
 		}
 	}
 }
-
-/**
- * マッチングを行うクラス
- */
-class Matcher {
-	StringTokenizer st1;
-	StringTokenizer st2;
-	HashMap<String, String> vars;
-
-	Matcher() {
-		vars = new HashMap<String, String>();
-	}
-
-	public boolean matching(String string1, String string2, HashMap<String, String> bindings) {
-		this.vars = bindings;
-		if (matching(string1, string2)) {
-			return true;
-		} else {
-			return false;
-		}
-	}
-
-	public boolean matching(String string1, String string2) {
-		// System.out.println(string1);
-		// System.out.println(string2);
-
-		// 同じなら成功
-		if (string1.equals(string2))
-			return true;
-
-		// 各々トークンに分ける
-		st1 = new StringTokenizer(string1);
-		st2 = new StringTokenizer(string2);
-
-		// 数が異なったら失敗
-		if (st1.countTokens() != st2.countTokens())
-			return false;
-
-		// 定数同士
-		for (int i = 0; i < st1.countTokens();) {
-			if (!tokenMatching(st1.nextToken(), st2.nextToken())) {
-				// トークンが一つでもマッチングに失敗したら失敗
-				return false;
-			}
-		}
-
-		// 最後まで O.K. なら成功
-		return true;
-	}
-
-	boolean tokenMatching(String token1, String token2) {
-		// System.out.println(token1+"<->"+token2);
-		if (token1.equals(token2))
-			return true;
-		if (var(token1) && !var(token2))
-			return varMatching(token1, token2);
-		if (!var(token1) && var(token2))
-			return varMatching(token2, token1);
-		return false;
-	}
-
-	boolean varMatching(String vartoken, String token) {
-		if (vars.containsKey(vartoken)) {
-			if (token.equals(vars.get(vartoken))) {
-				return true;
-			} else {
-				return false;
-			}
-		} else {
-			vars.put(vartoken, token);
-		}
-		return true;
-	}
-
-	boolean var(String str1) {
-		// 先頭が ? なら変数
-		return str1.startsWith("?");
-	}
-
-}
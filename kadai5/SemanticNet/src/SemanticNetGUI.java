@@ -1,11 +1,25 @@
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
 
 /**
  * セマンティックネットGUIクラス
@@ -14,6 +28,8 @@ import javax.swing.JPanel;
  */
 public class SemanticNetGUI extends JFrame {
 	PaintPanel paintPanel;// 描画パネル
+	// ウィンドウの最大の大きさ
+	final static int MAX_WIDTH = 1200, MAX_HEIGHT = 900;
 
 	/**
 	 * セマンティックネットGUIコンストラクタ
@@ -26,20 +42,33 @@ public class SemanticNetGUI extends JFrame {
 	public SemanticNetGUI(SemanticNet sn, Map<String, Point> pointTable) {
 		super("SemanticNetGUI");
 		paintPanel = new PaintPanel(sn, pointTable);
-		add(paintPanel);
+		// 大きなネットワークはスクロールして見る
+		JScrollPane scrollPane = new JScrollPane(paintPanel);
+		Dimension size = paintPanel.getPreferredSize();
+		scrollPane.setPreferredSize(new Dimension(Math.min(size.width + 20, MAX_WIDTH), Math.min(size.height + 20,
+				MAX_HEIGHT)));
+		add(scrollPane);
 		pack();
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 	}
 }
 
 /**
- * 描画用パネルクラス
+ * 描画用パネルクラス<br>
+ * ノードとリンクを格子状の索引に登録しておき，描き直す範囲(クリップ)に重なるものだけを描く．
+ * 描いた内容はタイルごとに画像にしておき，ノードが動いたりリンクが変わったりした範囲のタイルだけを描き直す．
+ * Ctrl キーを押しながらマウスホイールを回すと拡大・縮小する．
  */
 class PaintPanel extends JPanel {
 	// 矢印の先端のヒゲと線の角度ANGLE、矢印の先端のヒゲのサイズHEAD_SIZE
 	final static double ANGLE = Math.PI / 9, HEAD_SIZE = 12;
 	// 破線の空白のサイズ
 	final static double BLANK_SIZE = 6;
+	// 破線の線
+	final static BasicStroke DOTTED = new BasicStroke(1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f,
+			new float[] { (float) BLANK_SIZE, (float) BLANK_SIZE }, 0.0f);
+	// これより多くのノードやリンクが変わったときは，すべてのタイルを描き直す
+	final static int MAX_DIRTY = 4096;
 	// ノード名に対する座標テーブル
 	private Map<String, Point> pointTable;
 	private SemanticNet sn;
@@ -47,6 +76,30 @@ class PaintPanel extends JPanel {
 	final static int MARGIN = 100;
 	// ウィンドウサイズwidth x height
 	private int width, height;
+	// 索引の区画の一辺の長さ(最小)
+	final static int CELL_SIZE = 128;
+	// 拡大率がこれより小さいときは名前を描かない
+	final static double LABEL_SCALE = 0.5;
+	// 拡大率の範囲
+	final static double MIN_SCALE = 0.05, MAX_SCALE = 4.0;
+	// 拡大率
+	private double scale = 1.0;
+
+	// 描くノード(座標のあるもの)とその座標・名前
+	private Node[] nodes;
+	private int[] nodeX, nodeY;
+	// 描くリンクと，その tail と head の nodes での番号
+	private Link[] links;
+	private int[] linkTail, linkHead;
+	// ノード(番号 i)とリンク(番号 nodes.length + j)の索引
+	private SpatialGrid grid;
+	// 索引を作ったときのセマンティックネットのリンクの数
+	private int linkCount;
+	// 文字の高さと，関係名の幅(関係名は種類が少ないので覚えておく)
+	private int ascent, descent;
+	private HashMap<String, Integer> labelWidths = new HashMap<String, Integer>();
+	// 描いた内容のタイル
+	private TileCache tiles;
 
 	/**
 	 * セマンティックネット用描画パネル コンストラクタ
@@ -59,19 +112,249 @@ class PaintPanel extends JPanel {
 	public PaintPanel(SemanticNet sn, Map<String, Point> pointTable) {
 		this.sn = sn;
 		this.pointTable = pointTable;
+		tiles = new TileCache(new TileCache.Painter() {
+			public void paintTile(Graphics2D g) {
+				g.scale(scale, scale);
+				paintScene(g);
+			}
+		}, Color.WHITE);
+		reindex();
+
+		addMouseWheelListener(new MouseWheelListener() {
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				if (e.isControlDown()) {
+					zoom(Math.pow(1.1, -e.getWheelRotation()), e.getPoint());
+				} else {
+					// スクロールはスクロールペインに任せる
+					JScrollPane scrollPane = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class,
+							PaintPanel.this);
+					if (scrollPane != null) {
+						scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(PaintPanel.this, e, scrollPane));
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * 座標テーブルやリンクが変わったときに呼ぶ．描画サイズと索引を作り直し，変わった範囲を描き直す
+	 */
+	public void reindex() {
+		rebuild();
+		revalidate();
+		repaint();
+	}
 
+	/**
+	 * 描画サイズと索引を作り直し，前と位置が変わったノードとリンクのタイルを捨てる
+	 */
+	private void rebuild() {
+		Node[] oldNodes = nodes;
+		int[] oldX = nodeX, oldY = nodeY;
+		Link[] oldLinks = links;
+		int[] oldTail = linkTail, oldHead = linkHead;
+		linkCount = sn.links.size();
+
+		// 座標のあるノードに番号を振る(辞書での番号 -> nodes での番号 + 1)
+		ArrayList<Node> nodeList = new ArrayList<Node>();
+		int[] indexes = new int[sn.getDictionary().size()];
+		for (Node node : sn.getNodes()) {
+			if (pointTable.get(node.getName()) != null) {
+				nodeList.add(node);
+				indexes[node.getId()] = nodeList.size();
+			}
+		}
+		nodes = nodeList.toArray(new Node[nodeList.size()]);
+		nodeX = new int[nodes.length];
+		nodeY = new int[nodes.length];
 		// 描画サイズの決定
 		width = height = 0;
-		for (Point point : pointTable.values()) {
-			if (width < point.x)
-				width = point.x;
-			if (height < point.y)
-				height = point.y;
+		int minX = 0, minY = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			Point point = pointTable.get(nodes[i].getName());
+			nodeX[i] = point.x;
+			nodeY[i] = point.y;
+			width = Math.max(width, point.x);
+			height = Math.max(height, point.y);
+			minX = Math.min(minX, point.x);
+			minY = Math.min(minY, point.y);
+		}
+
+		// 両端に座標のあるリンク
+		ArrayList<Link> linkList = new ArrayList<Link>();
+		for (Node node : nodes) {
+			for (Link link : node.getDepartFromMeLinks()) {
+				if (indexes[link.getHead().getId()] > 0) {
+					linkList.add(link);
+				}
+			}
 		}
+		links = linkList.toArray(new Link[linkList.size()]);
+		linkTail = new int[links.length];
+		linkHead = new int[links.length];
+		for (int j = 0; j < links.length; j++) {
+			linkTail[j] = indexes[links[j].getTail().getId()] - 1;
+			linkHead[j] = indexes[links[j].getHead().getId()] - 1;
+		}
+
+		// 名前の幅も含めて索引に登録する
+		FontMetrics metrics = getFontMetrics(getFont());
+		ascent = metrics.getAscent();
+		descent = metrics.getDescent();
+		int items = nodes.length + links.length;
+		int cellSize = (int) Math.max(CELL_SIZE,
+				Math.sqrt((double) (width - minX + MARGIN) * (height - minY + MARGIN) / (4 * items + 1)));
+		grid = new SpatialGrid(minX, minY, width + MARGIN, height + MARGIN, cellSize);
+		for (int i = 0; i < nodes.length; i++) {
+			Rectangle r = nodeBounds(nodes[i], nodeX[i], nodeY[i]);
+			grid.addRect(i, r.x, r.y, r.x + r.width, r.y + r.height);
+		}
+		for (int j = 0; j < links.length; j++) {
+			int id = nodes.length + j;
+			int x1 = nodeX[linkTail[j]], y1 = nodeY[linkTail[j]];
+			int x2 = nodeX[linkHead[j]], y2 = nodeY[linkHead[j]];
+			grid.addSegment(id, x1, y1, x2, y2);
+			// 矢印の先端のヒゲ
+			Rectangle r = arrowBounds(x2, y2);
+			grid.addRect(id, r.x, r.y, r.x + r.width, r.y + r.height);
+			// リンク名
+			r = labelBounds(links[j], x1, y1, x2, y2);
+			grid.addRect(id, r.x, r.y, r.x + r.width, r.y + r.height);
+		}
+
 		width += MARGIN;
 		height += MARGIN;
 		// サイズ指定
-		setPreferredSize(new Dimension(width, height));
+		setPreferredSize(new Dimension((int) (width * scale), (int) (height * scale)));
+
+		if (oldNodes != null) {
+			invalidateChanged(oldNodes, oldX, oldY, oldLinks, oldTail, oldHead);
+		}
+	}
+
+	/**
+	 * ノードの四角と名前を囲む矩形
+	 */
+	private Rectangle nodeBounds(Node node, int x, int y) {
+		int top = Math.min(y, y + 10 - ascent);
+		return new Rectangle(x, top, 10 + getFontMetrics(getFont()).stringWidth(node.getName()), y + 10 + descent
+				- top);
+	}
+
+	/**
+	 * 矢印の先端のヒゲを囲む矩形
+	 */
+	private Rectangle arrowBounds(int x2, int y2) {
+		int arrow = (int) HEAD_SIZE + 1;
+		return new Rectangle(x2 - arrow, y2 - arrow, 2 * arrow, 2 * arrow);
+	}
+
+	/**
+	 * リンク名を囲む矩形
+	 */
+	private Rectangle labelBounds(Link link, int x1, int y1, int x2, int y2) {
+		String label = link.getLabel();
+		Integer labelWidth = labelWidths.get(label);
+		if (labelWidth == null) {
+			labelWidth = getFontMetrics(getFont()).stringWidth(label);
+			labelWidths.put(label, labelWidth);
+		}
+		int mx = (x1 + x2) / 2, my = (y1 + y2) / 2;
+		return new Rectangle(mx, my - ascent, labelWidth, ascent + descent);
+	}
+
+	/**
+	 * リンクの矢印と名前を囲む矩形
+	 */
+	private Rectangle linkBounds(Link link, int x1, int y1, int x2, int y2) {
+		Rectangle r = new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1), Math.abs(y2 - y1));
+		r.add(arrowBounds(x2, y2));
+		r.add(labelBounds(link, x1, y1, x2, y2));
+		return r;
+	}
+
+	/**
+	 * 前に索引を作ったときと比べて，現れた・消えた・動いたノードとリンクのタイルを捨てる
+	 */
+	private void invalidateChanged(Node[] oldNodes, int[] oldX, int[] oldY, Link[] oldLinks, int[] oldTail,
+			int[] oldHead) {
+		ArrayList<Rectangle> dirty = new ArrayList<Rectangle>();
+		HashMap<Node, Integer> oldNodeIndexes = new HashMap<Node, Integer>();
+		for (int j = 0; j < oldNodes.length; j++) {
+			oldNodeIndexes.put(oldNodes[j], j);
+		}
+		for (int i = 0; i < nodes.length && dirty.size() <= MAX_DIRTY; i++) {
+			Integer j = oldNodeIndexes.remove(nodes[i]);
+			if (j == null || oldX[j] != nodeX[i] || oldY[j] != nodeY[i]) {
+				dirty.add(nodeBounds(nodes[i], nodeX[i], nodeY[i]));
+				if (j != null) {
+					dirty.add(nodeBounds(nodes[i], oldX[j], oldY[j]));
+				}
+			}
+		}
+		for (int j : oldNodeIndexes.values()) {
+			dirty.add(nodeBounds(oldNodes[j], oldX[j], oldY[j]));
+		}
+		IdentityHashMap<Link, Integer> oldLinkIndexes = new IdentityHashMap<Link, Integer>();
+		for (int j = 0; j < oldLinks.length; j++) {
+			oldLinkIndexes.put(oldLinks[j], j);
+		}
+		for (int i = 0; i < links.length && dirty.size() <= MAX_DIRTY; i++) {
+			int x1 = nodeX[linkTail[i]], y1 = nodeY[linkTail[i]];
+			int x2 = nodeX[linkHead[i]], y2 = nodeY[linkHead[i]];
+			Integer j = oldLinkIndexes.remove(links[i]);
+			if (j != null) {
+				int ox1 = oldX[oldTail[j]], oy1 = oldY[oldTail[j]];
+				int ox2 = oldX[oldHead[j]], oy2 = oldY[oldHead[j]];
+				if (ox1 == x1 && oy1 == y1 && ox2 == x2 && oy2 == y2) {
+					continue;
+				}
+				dirty.add(linkBounds(links[i], ox1, oy1, ox2, oy2));
+			}
+			dirty.add(linkBounds(links[i], x1, y1, x2, y2));
+		}
+		for (int j : oldLinkIndexes.values()) {
+			if (dirty.size() > MAX_DIRTY) {
+				break;
+			}
+			dirty.add(linkBounds(oldLinks[j], oldX[oldTail[j]], oldY[oldTail[j]], oldX[oldHead[j]],
+					oldY[oldHead[j]]));
+		}
+
+		if (dirty.size() > MAX_DIRTY) {
+			tiles.invalidateAll();
+			return;
+		}
+		for (Rectangle r : dirty) {
+			// 拡大率を掛けた座標にし，線の太さの分だけ広げる
+			tiles.invalidate(new Rectangle((int) Math.floor(r.x * scale) - 2, (int) Math.floor(r.y * scale) - 2,
+					(int) Math.ceil(r.width * scale) + 4, (int) Math.ceil(r.height * scale) + 4));
+		}
+	}
+
+	/**
+	 * 拡大率を factor 倍にする．center の位置が画面上で動かないようにスクロールする
+	 */
+	void zoom(double factor, Point center) {
+		double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+		double ratio = newScale / scale;
+		scale = newScale;
+		tiles.invalidateAll();
+		Dimension size = new Dimension((int) (width * scale), (int) (height * scale));
+		setPreferredSize(size);
+		JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+		if (viewport != null) {
+			Point view = viewport.getViewPosition();
+			viewport.setViewSize(size);
+			int x = (int) (center.x * ratio) - (center.x - view.x);
+			int y = (int) (center.y * ratio) - (center.y - view.y);
+			Dimension extent = viewport.getExtentSize();
+			x = Math.max(0, Math.min(x, size.width - extent.width));
+			y = Math.max(0, Math.min(y, size.height - extent.height));
+			viewport.setViewPosition(new Point(x, y));
+		}
+		revalidate();
+		repaint();
 	}
 
 	/**
@@ -130,6 +413,15 @@ class PaintPanel extends JPanel {
 	 *
 	 */
 	public static void drawDottedLine(Graphics g, int x1, int y1, int x2, int y2) {
+		if (g instanceof Graphics2D) {
+			// 破線の線で一度に描く
+			Graphics2D g2 = (Graphics2D) g;
+			Stroke stroke = g2.getStroke();
+			g2.setStroke(DOTTED);
+			g2.drawLine(x1, y1, x2, y2);
+			g2.setStroke(stroke);
+			return;
+		}
 		// 方向ベクトル
 		double dx = (x2 - x1), dy = (y2 - y1);
 		double length = Math.sqrt(dx * dx + dy * dy);
@@ -144,34 +436,65 @@ class PaintPanel extends JPanel {
 	}
 
 	/**
-	 * 描画メソッド
+	 * 描画メソッド<br>
+	 * クリップに重なるタイルの画像を写す．リンクの数が変わっていたら索引を作り直す．
 	 */
 	@Override
 	public void paintComponent(Graphics g) {
-		// 白で覆う
-		g.setColor(Color.WHITE);
-		g.fillRect(0, 0, getWidth(), getHeight());
-		// 各ノードに対して
-		for (Node node : sn.getNodes()) {
-			// 座標取得
-			Point point = pointTable.get(node.getName());
-			if (point != null) {
-				// 自分から出るリンクに対して
-				for (Link link : node.getDepartFromMeLinks()) {
-					// 矢印の先端の座標を求める
-					Point pointTail = pointTable.get(link.getHead().getName());
+		if (sn.links.size() != linkCount) {
+			rebuild();
+			revalidate();
+		}
+		tiles.paint(g, getWidth(), getHeight());
+	}
+
+	/**
+	 * クリップに重なるリンクとノードだけを描く．縮小しているときは名前を描かない．
+	 *
+	 * @param g0
+	 *            拡大率を掛けたGraphicsオブジェクト
+	 */
+	void paintScene(Graphics2D g0) {
+		Graphics2D g = (Graphics2D) g0.create();
+		try {
+			Rectangle clip = g.getClipBounds();
+			if (clip == null) {
+				clip = new Rectangle(0, 0, width, height);
+			}
+			int count = grid.query(clip);
+			int[] found = grid.getFound();
+			// 重なったときの描く順を，描き直す範囲によらず同じにする
+			Arrays.sort(found, 0, count);
+			boolean label = scale >= LABEL_SCALE;
+			// リンクを描いてから，その上にノードを描く
+			for (int k = 0; k < count; k++) {
+				int j = found[k] - nodes.length;
+				if (j >= 0) {
+					int x1 = nodeX[linkTail[j]], y1 = nodeY[linkTail[j]];
+					int x2 = nodeX[linkHead[j]], y2 = nodeY[linkHead[j]];
 					// 矢印描画
 					g.setColor(Color.MAGENTA);
-					drawArrow(g, point.x, point.y, pointTail.x, pointTail.y, link.inheritance);
+					drawArrow(g, x1, y1, x2, y2, links[j].inheritance);
 					// リンク名描画
-					g.setColor(Color.BLUE);
-					g.drawString(link.getLabel(), (point.x + pointTail.x) / 2, (point.y + pointTail.y) / 2);
+					if (label) {
+						g.setColor(Color.BLUE);
+						g.drawString(links[j].getLabel(), (x1 + x2) / 2, (y1 + y2) / 2);
+					}
+				}
+			}
+			for (int k = 0; k < count; k++) {
+				int i = found[k];
+				if (i < nodes.length) {
+					// ノード名描画
+					g.setColor(Color.BLACK);
+					if (label) {
+						g.drawString(nodes[i].getName(), nodeX[i] + 10, nodeY[i] + 10);
+					}
+					g.fillRect(nodeX[i], nodeY[i], 5, 5);
 				}
-				// ノード名描画
-				g.setColor(Color.BLACK);
-				g.drawString(node.getName(), point.x + 10, point.y + 10);
-				g.fillRect(point.x, point.y, 5, 5);
 			}
+		} finally {
+			g.dispose();
 		}
 	}
 }
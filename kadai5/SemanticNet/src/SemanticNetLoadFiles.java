@@ -8,6 +8,10 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  *
@@ -24,6 +28,101 @@ public class SemanticNetLoadFiles {
 		return sn;
 	}
 
+	/*
+	 * SNFilesLoader と同じファイルを読むが、ファイルの解析を並列に行い、
+	 * すべてのリンクを加えてから継承を一度だけ行う。ファイルが多いときに使う。
+	 * ファイルは SemanticNetStreamLoader でメモリにマップして読む。
+	*/
+	public SemanticNet SNFilesBulkLoader(String directryName){
+		return SNFilesBulkLoader(directryName, new SemanticNet());
+	}
+
+	/*
+	 * SNFilesBulkLoader で、読み込み先のセマンティックネットを指定する。
+	 * 空のセマンティックネットを渡すこと(リンクがあるときは一つずつaddLinkする)。
+	*/
+	public SemanticNet SNFilesBulkLoader(String directryName, SemanticNet sn){
+		ArrayList<File> files = new ArrayList<File>();
+		listFiles(new File(directryName), files);
+		ForkJoinPool pool = new ForkJoinPool();
+		try{
+			// 同じ名前は同じStringを共有させる
+			ConcurrentHashMap<String, String> terms = new ConcurrentHashMap<String, String>();
+			List<String[]> triples = pool.invoke(new ParseTask(files, 0, files.size(), terms));
+			sn.addLinks(triples);
+		}finally{
+			pool.shutdown();
+		}
+		return sn;
+	}
+
+	/*
+	 * ディレクトリ以下の全てのファイルを、readDirectryと同じ順にリストに加える
+	*/
+	void listFiles( File dir, ArrayList<File> fileList ) {
+		File[] files = dir.listFiles();
+		if( files == null )
+			return;
+		for( File file : files ) {
+			if( !file.exists() )
+				continue;
+			else if( file.isDirectory() )
+				listFiles( file, fileList );
+			else if( file.isFile() )
+				fileList.add( file );
+		}
+	}
+
+	/*
+	 * ファイルのリストを分割して並列に解析し、(関係名, tail, head) のリストをファイルの順に返す
+	*/
+	static class ParseTask extends RecursiveTask<ArrayList<String[]>> {
+		private static final long serialVersionUID = 1L;
+
+		// これ以下のファイル数なら分割しない
+		static final int THRESHOLD = 4;
+
+		ArrayList<File> files;
+		int from, to;
+		ConcurrentHashMap<String, String> terms;
+
+		ParseTask(ArrayList<File> files, int from, int to, ConcurrentHashMap<String, String> terms){
+			this.files = files;
+			this.from = from;
+			this.to = to;
+			this.terms = terms;
+		}
+
+		@Override
+		protected ArrayList<String[]> compute(){
+			if( to - from <= THRESHOLD ){
+				ArrayList<String[]> triples = new ArrayList<String[]>();
+				SemanticNetStreamLoader loader = new SemanticNetStreamLoader();
+				for(int i=from; i<to; i++)
+					loader.readTriples(files.get(i), triples);
+				// ほかのタスクで読んだ名前とも同じStringを共有させる
+				for(String[] triple : triples){
+					for(int j=0; j<triple.length; j++)
+						triple[j] = term(triple[j]);
+				}
+				return triples;
+			}
+			int mid = (from + to) / 2;
+			ParseTask left = new ParseTask(files, from, mid, terms);
+			ParseTask right = new ParseTask(files, mid, to, terms);
+			left.fork();
+			ArrayList<String[]> triples = right.compute();
+			ArrayList<String[]> leftTriples = left.join();
+			leftTriples.addAll(triples);
+			return leftTriples;
+		}
+
+		String term(String str){
+			String canonical = terms.putIfAbsent(str, str);
+			return (canonical != null) ? canonical : str;
+		}
+	}
+
 	/*
 	 * 引数の ArrayList<String> strList を区切り文字" "を使って、セマンティックネットにaddしまくる。
 	*/
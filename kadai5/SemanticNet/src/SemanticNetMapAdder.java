@@ -23,9 +23,18 @@ public class SemanticNetMapAdder {
 	double l = 130.0;				// バネの自然長
 	double g = 1000.0d;			// 静電気の反発係数
 	double m = 0.3d;				// 空気抵抗の係数
+	boolean barnesHut = true;		// 反発力を四分木で近似して配列で計算する。false なら全ノードの組で計算する
+	double theta = 0.8d;			// 四分木の近似の粗さ(ForceLayout.theta)
+	double minEnergy = 0.5d;		// ノード一つあたりの運動エネルギーがこれを下回ったら(一手で平均0.1ほどしか動かなくなったら)、iterateMax手より前に止める
+	int iterations;				// 前回の配置で進めた手数
+	double energy;					// 前回の配置の最後の運動エネルギーの合計
+	int incrementalDepth = 1;		// semanticNetMapUpdateで、新しいノードから何リンク先までのノードを動かすか
 	SemanticNetMapAdder(){}
 
 	Map<String, Point> semanticNetMapAdd(SemanticNet sn){
+		if(barnesHut){
+			return forceLayoutMapAdd(sn);
+		}
 		//pointTable.put("study", new Point(400, 200));
 		ArrayList<Node> nodes = sn.getNodes();
 		Map<String,Point> pointTable = new HashMap<String,Point>();
@@ -53,6 +62,68 @@ public class SemanticNetMapAdder {
 		return pointTable;
 	}
 
+	/*
+	 * ForceLayout で配置する。ノードが多くても一手が O(n log n) で済む
+	 * */
+	Map<String, Point> forceLayoutMapAdd(SemanticNet sn){
+		ForceLayout layout = newForceLayout(sn.getNodes());
+		// 円形に並べる
+		layout.circularize(mapCenter, mapCenter);
+		// 移動。落ち着いたら途中で止める
+		iterations = layout.relax(iterateMax, minEnergy * layout.size());
+		energy = layout.energy;
+		return toPointTable(layout);
+	}
+
+	/*
+	 * すでに配置したpointTableに、後から加わったノードを配置する。
+	 * pointTableにあるノードはその位置のまま、新しいノードを隣接ノードの近くに置き、
+	 * 新しいノードとそのincrementalDepthリンク先までのノードだけを動かす。pointTableを書き換えて返す。
+	 * */
+	Map<String, Point> semanticNetMapUpdate(SemanticNet sn, Map<String,Point> pointTable){
+		ForceLayout layout = newForceLayout(sn.getNodes());
+		boolean[] placed = new boolean[layout.size()];
+		for(int i=0; i<layout.size(); i++){
+			Point point = pointTable.get(layout.nodes[i].getName());
+			if(point != null){
+				layout.x[i] = point.getX() -250;
+				layout.y[i] = point.getY() -250;
+				placed[i] = true;
+			}
+		}
+		int[] added = layout.placeNear(placed, mapCenter);
+		if(added.length == 0){
+			return pointTable;
+		}
+		// 新しいノードの周りだけを動かす。落ち着いたら途中で止める
+		int[] active = layout.around(added, incrementalDepth);
+		iterations = layout.relaxLocally(active, iterateMax, minEnergy * active.length);
+		energy = layout.energy;
+		for(int i : active){
+			pointTable.put(layout.nodes[i].getName(), new Point((int)layout.x[i] +250, (int)layout.y[i] +250));
+		}
+		return pointTable;
+	}
+
+	ForceLayout newForceLayout(ArrayList<Node> nodes){
+		ForceLayout layout = new ForceLayout(nodes);
+		layout.dt = dt;
+		layout.k = k;
+		layout.l = l;
+		layout.g = g;
+		layout.m = m;
+		layout.theta = theta;
+		return layout;
+	}
+
+	Map<String, Point> toPointTable(ForceLayout layout){
+		Map<String,Point> pointTable = new HashMap<String,Point>();
+		for(int i=0; i<layout.size(); i++){
+			pointTable.put(layout.nodes[i].getName(), new Point((int)layout.x[i] +250, (int)layout.y[i] +250));
+		}
+		return pointTable;
+	}
+
 	void circularize(HashMap<String,RadiusVelocityOfNode> nodeS){
 		int count = nodeS.size();
 		double dtheta = 2.0d * Math.PI / (double)count;
@@ -0,0 +1,251 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * セマンティックネットのスナップショット(バイナリ形式)を書き出し，読み込むクラス<br>
+ * 辞書，リンク(継承によって作成されたものを含む)，各ノードの departFromMeLinks と arriveAtMeLinks をそのまま保存し，
+ * 読み込むときはファイルをメモリにマップして，ファイルの解析も継承もやり直さずに組み立てる．
+ * ファイル全体を一度にマップするので，スナップショットの大きさは 2GB までとする．
+ * 元にしたファイルの名前，大きさ，更新時刻から求めた値を記録しておき，どれかが変わったら古いとみなす．
+ *
+ * <pre>
+ * int 識別子 SNS1, int 版, byte virtualInheritance, long 元にしたファイルの値(不明なら 0)
+ * int 名前の数, (int バイト数, UTF-8 のバイト列) * 名前の数        … 辞書での番号順
+ * int ノードの数, int 名前の番号 * ノードの数                      … nodes の順
+ * int リンクの数, (int 関係名, int tail, int head, byte 継承) * リンクの数 … links の順
+ * (int 数, int リンクの番号 * 数) * 2 * ノードの数               … departFromMeLinks, arriveAtMeLinks
+ * </pre>
+ */
+public class SemanticNetSnapshot {
+	static final int MAGIC = 0x534E5331; // "SNS1"
+	static final int VERSION = 2;
+
+	/**
+	 * スナップショットを書き出す．元にしたファイルは記録しないので，isUpToDate はいつも false になる
+	 *
+	 * @param sn
+	 *            セマンティックネット
+	 * @param file
+	 *            書き出すファイル
+	 * @throws IOException
+	 *             書き出せなかったとき
+	 */
+	public static void write(SemanticNet sn, File file) throws IOException {
+		write(sn, file, null);
+	}
+
+	/**
+	 * スナップショットを書き出す
+	 *
+	 * @param sn
+	 *            セマンティックネット
+	 * @param file
+	 *            書き出すファイル
+	 * @param dir
+	 *            元にしたファイルのディレクトリ(null なら記録しない)
+	 * @throws IOException
+	 *             書き出せなかったとき
+	 */
+	public static void write(SemanticNet sn, File file, File dir) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeByte(sn.virtualInheritance ? 1 : 0);
+			out.writeLong((dir != null) ? fingerprint(dir) : 0);
+
+			TermDictionary dictionary = sn.getDictionary();
+			out.writeInt(dictionary.size());
+			for (int i = 0; i < dictionary.size(); i++) {
+				byte[] bytes = dictionary.term(i).getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			ArrayList<Node> nodes = sn.getNodes();
+			out.writeInt(nodes.size());
+			for (int i = 0; i < nodes.size(); i++) {
+				out.writeInt(nodes.get(i).getId());
+			}
+
+			ArrayList<Link> links = sn.links;
+			IdentityHashMap<Link, Integer> linkNumbers = new IdentityHashMap<Link, Integer>(links.size());
+			out.writeInt(links.size());
+			for (int i = 0; i < links.size(); i++) {
+				Link theLink = links.get(i);
+				linkNumbers.put(theLink, i);
+				out.writeInt(theLink.getLabelId());
+				out.writeInt(theLink.getTail().getId());
+				out.writeInt(theLink.getHead().getId());
+				out.writeByte(theLink.isInheritance() ? 1 : 0);
+			}
+
+			for (int i = 0; i < nodes.size(); i++) {
+				writeLinks(out, nodes.get(i).getDepartFromMeLinks(), linkNumbers);
+				writeLinks(out, nodes.get(i).getArriveAtMeLinks(), linkNumbers);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeLinks(DataOutputStream out, ArrayList<Link> theLinks,
+			IdentityHashMap<Link, Integer> linkNumbers) throws IOException {
+		out.writeInt(theLinks.size());
+		for (int i = 0; i < theLinks.size(); i++) {
+			out.writeInt(linkNumbers.get(theLinks.get(i)));
+		}
+	}
+
+	/**
+	 * スナップショットを読み込む
+	 *
+	 * @param file
+	 *            スナップショットのファイル
+	 * @return セマンティックネット
+	 * @throws IOException
+	 *             読み込めなかったとき，またはスナップショットの形式でないとき
+	 */
+	public static SemanticNet load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+				throw new IOException("スナップショットの形式ではありません: " + file);
+			}
+			SemanticNet sn = new SemanticNet(in.get() != 0);
+			in.getLong();
+
+			TermDictionary dictionary = sn.getDictionary();
+			int termCount = in.getInt();
+			byte[] bytes = new byte[64];
+			for (int i = 0; i < termCount; i++) {
+				int length = in.getInt();
+				if (bytes.length < length) {
+					bytes = new byte[length];
+				}
+				in.get(bytes, 0, length);
+				if (dictionary.id(new String(bytes, 0, length, StandardCharsets.UTF_8)) != i) {
+					throw new IOException("辞書が壊れています: " + file);
+				}
+			}
+
+			int nodeCount = in.getInt();
+			Node[] nodes = new Node[nodeCount];
+			for (int i = 0; i < nodeCount; i++) {
+				nodes[i] = sn.getNode(dictionary.term(in.getInt()));
+			}
+
+			int linkCount = in.getInt();
+			Link[] links = new Link[linkCount];
+			sn.links.ensureCapacity(linkCount);
+			for (int i = 0; i < linkCount; i++) {
+				int label = in.getInt();
+				Node tail = sn.getNode(in.getInt());
+				Node head = sn.getNode(in.getInt());
+				Link theLink = new Link(label, tail, head);
+				theLink.setInheritance(in.get() != 0);
+				sn.storeLink(theLink);
+				links[i] = theLink;
+			}
+
+			for (int i = 0; i < nodeCount; i++) {
+				int departCount = in.getInt();
+				for (int j = 0; j < departCount; j++) {
+					nodes[i].addDepartFromMeLinks(links[in.getInt()]);
+				}
+				int arriveCount = in.getInt();
+				for (int j = 0; j < arriveCount; j++) {
+					nodes[i].addArriveAtMeLinks(links[in.getInt()]);
+				}
+			}
+
+			// is-a の閉包は登録されたリンクから作り直す
+			for (int i = 0; i < linkCount; i++) {
+				if (links[i].getLabelId() == TermDictionary.ISA && !links[i].isInheritance()) {
+					sn.isaClosure.addIsaLink(links[i]);
+				}
+			}
+			return sn;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * スナップショットが，ディレクトリ以下のいまのファイルから作ったものか<br>
+	 * ファイルの名前，大きさ，更新時刻のどれかが書き出したときと違えば古い(時刻が戻ったときも古い)．
+	 *
+	 * @param file
+	 *            スナップショットのファイル
+	 * @param dir
+	 *            元にしたファイルのディレクトリ
+	 * @return 新しければ true．スナップショットが無いか，元にしたファイルを記録していなければ false
+	 */
+	public static boolean isUpToDate(File file, File dir) {
+		if (!file.isFile()) {
+			return false;
+		}
+		long recorded;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return false;
+			}
+			in.readByte();
+			recorded = in.readLong();
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		return recorded != 0 && recorded == fingerprint(dir);
+	}
+
+	/**
+	 * ディレクトリ以下のファイルの名前，大きさ，更新時刻から求めた値．0 にはしない
+	 */
+	static long fingerprint(File dir) {
+		long value = fingerprint(dir, "", 1125899906842597L);
+		return (value != 0) ? value : 1;
+	}
+
+	private static long fingerprint(File dir, String path, long value) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return value;
+		}
+		// listFiles の順は決まっていないので，名前の順にする
+		Arrays.sort(files);
+		for (File file : files) {
+			String name = path + "/" + file.getName();
+			value = 31 * value + name.hashCode();
+			if (file.isDirectory()) {
+				value = fingerprint(file, name, value);
+			} else {
+				value = 31 * value + file.length();
+				value = 31 * value + file.lastModified();
+			}
+		}
+		return value;
+	}
+}
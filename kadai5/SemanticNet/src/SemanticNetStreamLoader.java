@@ -0,0 +1,310 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 「関係名 tail head」の行が並んだファイルを読み込んでセマンティックネットに加えるクラス<br>
+ * ファイルをメモリにマップし，バイト列のまま行と項に区切って，一行ずつリンクを加える．
+ * ファイルの内容を文字列のリストにしないので，大きなファイルでもメモリを倍に使わない．
+ * 区切り方は SemanticNetLoadFiles と同じ(空白一つで区切る，空行は読み飛ばす)．
+ * 文字コードは空白と改行が 1 バイトで表されるもの(UTF-8，Shift_JIS，EUC-JP など)に限る．
+ * SemanticNetLoadFiles.SNFilesBulkLoader は readTriples でファイルを (関係名, tail, head) のリストにする．
+ */
+public class SemanticNetStreamLoader {
+	// 一度にマップする大きさ
+	static final int CHUNK_SIZE = 1 << 30;
+
+	int chunkSize;
+	Charset charset;
+	// 項のバイト列 -> 名前
+	TermCache terms;
+	// 読み飛ばした行の数
+	int skippedLines;
+	// リンクを加える代わりに (関係名, tail, head) を加えるリスト(null ならリンクを加える)
+	List<String[]> triples;
+
+	SemanticNetStreamLoader() {
+		this(Charset.defaultCharset());
+	}
+
+	/**
+	 * @param theCharset
+	 *            ファイルの文字コード
+	 */
+	SemanticNetStreamLoader(Charset theCharset) {
+		this(theCharset, CHUNK_SIZE);
+	}
+
+	SemanticNetStreamLoader(Charset theCharset, int theChunkSize) {
+		charset = theCharset;
+		chunkSize = theChunkSize;
+	}
+
+	/**
+	 * ディレクトリ以下の全てのファイルを読み込む
+	 *
+	 * @param directryName
+	 *            ディレクトリ名
+	 * @return 読み込んだセマンティックネット
+	 */
+	public SemanticNet load(String directryName) {
+		return load(directryName, new SemanticNet());
+	}
+
+	/**
+	 * ディレクトリ以下の全てのファイルを sn に読み込む<br>
+	 * sn が空なら，すべてのリンクを加えてから継承を一度だけ行う．
+	 *
+	 * @param directryName
+	 *            ディレクトリ名
+	 * @param sn
+	 *            読み込み先のセマンティックネット
+	 * @return sn
+	 */
+	public SemanticNet load(String directryName, SemanticNet sn) {
+		boolean bulk = sn.links.isEmpty();
+		terms = new TermCache();
+		skippedLines = 0;
+		loadDirectry(new File(directryName), sn, bulk);
+		terms = null;
+		if (bulk && !sn.virtualInheritance) {
+			sn.materializeInheritance();
+		}
+		return sn;
+	}
+
+	/**
+	 * ファイルを一つ読んで，(関係名, tail, head) を theTriples に加える．セマンティックネットには加えない<br>
+	 * 同じインスタンスで読んだファイルの間では，同じ名前は同じ String になる．
+	 *
+	 * @param file
+	 *            読むファイル
+	 * @param theTriples
+	 *            (関係名, tail, head) を加えるリスト
+	 */
+	public void readTriples(File file, List<String[]> theTriples) {
+		if (terms == null) {
+			terms = new TermCache();
+		}
+		triples = theTriples;
+		try {
+			loadFile(file, null, true);
+		} finally {
+			triples = null;
+		}
+	}
+
+	/**
+	 * ディレクトリ以下の全てのファイルを SemanticNetLoadFiles と同じ順に読み込む
+	 */
+	void loadDirectry(File dir, SemanticNet sn, boolean bulk) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (!file.exists()) {
+				continue;
+			} else if (file.isDirectory()) {
+				loadDirectry(file, sn, bulk);
+			} else if (file.isFile()) {
+				loadFile(file, sn, bulk);
+			}
+		}
+	}
+
+	/**
+	 * ファイルを一つ読み込む<br>
+	 * ファイルは chunkSize ずつマップし，途中で切れた行は次にマップする範囲の先頭から読み直す．
+	 */
+	void loadFile(File file, SemanticNet sn, boolean bulk) {
+		if (!file.canRead()) {
+			System.out.println("ファイルが見つからないか開けません");
+			return;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				long size = channel.size();
+				long position = 0;
+				while (position < size) {
+					int length = (int) Math.min(chunkSize, size - position);
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+					boolean last = (position + length == size);
+					int consumed = parse(buffer, length, last, file, sn, bulk);
+					if (consumed == 0) {
+						System.out.println("行が長すぎるので読み込みを中止しました: " + file);
+						return;
+					}
+					position += consumed;
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			System.out.println(e);
+		}
+	}
+
+	/**
+	 * マップした範囲を行に区切ってリンクを加える
+	 *
+	 * @return 読み終えたバイト数．最後の範囲でなければ，途中で切れた行の手前まで
+	 */
+	int parse(ByteBuffer buffer, int length, boolean last, File file, SemanticNet sn, boolean bulk) {
+		int lineStart = 0;
+		for (int i = 0; i < length; i++) {
+			byte b = buffer.get(i);
+			if (b == '\n' || b == '\r') {
+				parseLine(buffer, lineStart, i, file, sn, bulk);
+				lineStart = i + 1;
+			}
+		}
+		if (!last) {
+			return lineStart;
+		}
+		parseLine(buffer, lineStart, length, file, sn, bulk);
+		return length;
+	}
+
+	/**
+	 * 一行を「関係名 tail head」に区切ってリンクを加える<br>
+	 * String.split(" ", 0) と同じく，空白が続くところは空の項とし，4 つ目以降の項は無視する．
+	 */
+	void parseLine(ByteBuffer buffer, int start, int end, File file, SemanticNet sn, boolean bulk) {
+		if (start == end) {
+			return;
+		}
+		int space1 = indexOfSpace(buffer, start, end);
+		int space2 = (space1 < end) ? indexOfSpace(buffer, space1 + 1, end) : end;
+		// 3 つ目以降の項がすべて空なら split では項が 3 つに満たない
+		if (space2 == end || !hasNonSpace(buffer, space2 + 1, end)) {
+			skippedLines++;
+			System.out.println("読み飛ばした行: " + file + ": " + decode(buffer, start, end));
+			return;
+		}
+		int space3 = indexOfSpace(buffer, space2 + 1, end);
+		String label = terms.get(buffer, start, space1, charset);
+		String tail = terms.get(buffer, space1 + 1, space2, charset);
+		String head = terms.get(buffer, space2 + 1, space3, charset);
+		if (triples != null) {
+			triples.add(new String[] { label, tail, head });
+			return;
+		}
+		Link theLink = new Link(label, tail, head, sn);
+		if (bulk) {
+			sn.addAssertedLink(theLink);
+		} else {
+			sn.addLink(theLink);
+		}
+	}
+
+	private static int indexOfSpace(ByteBuffer buffer, int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (buffer.get(i) == ' ') {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	private static boolean hasNonSpace(ByteBuffer buffer, int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (buffer.get(i) != ' ') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String decode(ByteBuffer buffer, int from, int to) {
+		byte[] bytes = new byte[to - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(from + i);
+		}
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * 項のバイト列から名前を引く表<br>
+	 * 一度読んだ項は文字列に直さずに同じ String を返す．
+	 */
+	static class TermCache {
+		private byte[][] keys = new byte[1024][];
+		private String[] values = new String[1024];
+		private int[] hashes = new int[1024];
+		private int size;
+		// 照合用に項のバイト列を写しておく場所
+		private byte[] scratch = new byte[64];
+
+		String get(ByteBuffer buffer, int from, int to, Charset charset) {
+			int length = to - from;
+			if (scratch.length < length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+			int hash = 1;
+			for (int i = 0; i < length; i++) {
+				byte b = buffer.get(from + i);
+				scratch[i] = b;
+				hash = 31 * hash + b;
+			}
+			int mask = keys.length - 1;
+			int slot = hash & mask;
+			while (keys[slot] != null) {
+				if (hashes[slot] == hash && equals(keys[slot], scratch, length)) {
+					return values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			byte[] key = Arrays.copyOf(scratch, length);
+			String value = new String(key, charset);
+			keys[slot] = key;
+			values[slot] = value;
+			hashes[slot] = hash;
+			if (++size * 2 > keys.length) {
+				resize();
+			}
+			return value;
+		}
+
+		private static boolean equals(byte[] key, byte[] bytes, int length) {
+			if (key.length != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (key[i] != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void resize() {
+			byte[][] oldKeys = keys;
+			String[] oldValues = values;
+			int[] oldHashes = hashes;
+			keys = new byte[oldKeys.length * 2][];
+			values = new String[oldKeys.length * 2];
+			hashes = new int[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					int slot = oldHashes[i] & mask;
+					while (keys[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
+					hashes[slot] = oldHashes[i];
+				}
+			}
+		}
+	}
+}
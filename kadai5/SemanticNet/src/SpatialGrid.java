@@ -0,0 +1,167 @@
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * 平面上の図形を格子状の区画に登録し，矩形と重なる区画の図形だけを取り出す索引<br>
+ * 図形は 0 からの番号で表す．線分は通る区画だけに，矩形は重なる区画すべてに登録する．
+ * 範囲の外の座標は端の区画に登録する．
+ */
+class SpatialGrid {
+	// 区画の一辺の長さ
+	private int cellSize;
+	// 左上の区画の座標と，区画の列数・行数
+	private int originX;
+	private int originY;
+	private int columns;
+	private int rows;
+	// 区画(行 * columns + 列) -> 図形の番号
+	private int[][] cells;
+	private int[] counts;
+
+	// query で同じ図形を二度返さないための印
+	private int[] marks;
+	private int mark;
+	// query の結果
+	private int[] found;
+
+	/**
+	 * (minX, minY) から (maxX, maxY) までを覆う索引を作る
+	 */
+	SpatialGrid(int minX, int minY, int maxX, int maxY, int theCellSize) {
+		cellSize = theCellSize;
+		originX = minX;
+		originY = minY;
+		columns = Math.max(1, (maxX - minX) / cellSize + 1);
+		rows = Math.max(1, (maxY - minY) / cellSize + 1);
+		cells = new int[columns * rows][];
+		counts = new int[columns * rows];
+		marks = new int[16];
+		found = new int[16];
+	}
+
+	/**
+	 * 矩形の図形を登録する
+	 */
+	void addRect(int id, int x1, int y1, int x2, int y2) {
+		int c1 = column(Math.min(x1, x2));
+		int c2 = column(Math.max(x1, x2));
+		int r1 = row(Math.min(y1, y2));
+		int r2 = row(Math.max(y1, y2));
+		for (int r = r1; r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				add(id, r * columns + c);
+			}
+		}
+	}
+
+	/**
+	 * 線分の図形を，線分が通る区画に登録する
+	 */
+	void addSegment(int id, int x1, int y1, int x2, int y2) {
+		int c = column(x1);
+		int r = row(y1);
+		int endC = column(x2);
+		int endR = row(y2);
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		int stepC = (dx > 0) ? 1 : -1;
+		int stepR = (dy > 0) ? 1 : -1;
+		// 次の縦・横の区画の境界に達するときの，線分上の位置(0 から 1)
+		double deltaC = (dx != 0) ? cellSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+		double deltaR = (dy != 0) ? cellSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+		double nextC = (dx != 0) ? (boundary(originX, c, stepC) - x1) / dx : Double.POSITIVE_INFINITY;
+		double nextR = (dy != 0) ? (boundary(originY, r, stepR) - y1) / dy : Double.POSITIVE_INFINITY;
+		add(id, r * columns + c);
+		int steps = Math.abs(endC - c) + Math.abs(endR - r);
+		for (int i = 0; i < steps; i++) {
+			if (nextC < nextR) {
+				c += stepC;
+				nextC += deltaC;
+			} else {
+				r += stepR;
+				nextR += deltaR;
+			}
+			if (c < 0 || c >= columns || r < 0 || r >= rows) {
+				break;
+			}
+			add(id, r * columns + c);
+		}
+	}
+
+	private double boundary(int origin, int cell, int step) {
+		return origin + (double) (cell + (step > 0 ? 1 : 0)) * cellSize;
+	}
+
+	private void add(int id, int cell) {
+		int[] list = cells[cell];
+		int count = counts[cell];
+		if (count > 0 && list[count - 1] == id) {
+			// 同じ図形を続けて登録したとき
+			return;
+		}
+		if (list == null) {
+			list = new int[4];
+			cells[cell] = list;
+		} else if (count == list.length) {
+			list = Arrays.copyOf(list, count * 2);
+			cells[cell] = list;
+		}
+		list[count] = id;
+		counts[cell] = count + 1;
+		if (marks.length <= id) {
+			marks = Arrays.copyOf(marks, Math.max(id + 1, marks.length * 2));
+		}
+	}
+
+	/**
+	 * 矩形と重なる区画に登録された図形の番号を取り出す
+	 *
+	 * @param rect
+	 *            矩形
+	 * @return 図形の数．番号は getFound() の先頭から入る
+	 */
+	int query(Rectangle rect) {
+		mark++;
+		if (mark == Integer.MAX_VALUE) {
+			Arrays.fill(marks, 0);
+			mark = 1;
+		}
+		int size = 0;
+		int c1 = column(rect.x);
+		int c2 = column(rect.x + rect.width);
+		int r1 = row(rect.y);
+		int r2 = row(rect.y + rect.height);
+		for (int r = r1; r <= r2; r++) {
+			for (int c = c1; c <= c2; c++) {
+				int cell = r * columns + c;
+				int[] list = cells[cell];
+				for (int i = 0; i < counts[cell]; i++) {
+					int id = list[i];
+					if (marks[id] != mark) {
+						marks[id] = mark;
+						if (size == found.length) {
+							found = Arrays.copyOf(found, size * 2);
+						}
+						found[size++] = id;
+					}
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * 前回の query の結果
+	 */
+	int[] getFound() {
+		return found;
+	}
+
+	private int column(int x) {
+		return (x < originX) ? 0 : Math.min(columns - 1, (x - originX) / cellSize);
+	}
+
+	private int row(int y) {
+		return (y < originY) ? 0 : Math.min(rows - 1, (y - originY) / cellSize);
+	}
+}
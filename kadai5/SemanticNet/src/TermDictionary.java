@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * ノード名と関係名の辞書<br>
+ * 名前ごとに 0 から順に番号を振り，リンクやノードは名前の代わりに番号で持つ．
+ * is-a はどの辞書でも番号 ISA になる．
+ */
+class TermDictionary {
+	// is-a の番号
+	static final int ISA = 0;
+	// 辞書に無い名前の番号
+	static final int UNKNOWN = -2;
+
+	// 名前 -> 番号
+	private HashMap<String, Integer> ids;
+	// 番号 -> 名前
+	private ArrayList<String> terms;
+	// 空白を含む，または ? で始まる名前の番号
+	private BitSet irregular;
+
+	TermDictionary() {
+		ids = new HashMap<String, Integer>();
+		terms = new ArrayList<String>();
+		irregular = new BitSet();
+		id("is-a");
+	}
+
+	/**
+	 * 名前の番号を返す．辞書に無ければ新しい番号を振る
+	 *
+	 * @param theTerm
+	 *            ノード名または関係名
+	 * @return 番号
+	 */
+	public int id(String theTerm) {
+		Integer id = ids.get(theTerm);
+		if (id != null) {
+			return id;
+		}
+		int newId = terms.size();
+		ids.put(theTerm, newId);
+		terms.add(theTerm);
+		if (!TriplePattern.constant(theTerm)) {
+			irregular.set(newId);
+		}
+		return newId;
+	}
+
+	/**
+	 * 名前の番号を返す．辞書に無ければ UNKNOWN
+	 */
+	public int lookup(String theTerm) {
+		Integer id = ids.get(theTerm);
+		return (id != null) ? id : UNKNOWN;
+	}
+
+	/**
+	 * 番号に対する名前
+	 */
+	public String term(int theId) {
+		return terms.get(theId);
+	}
+
+	/**
+	 * 名前が空白を含まず ? で始まらない一つのトークンか
+	 */
+	public boolean isConstant(int theId) {
+		return !irregular.get(theId);
+	}
+
+	/**
+	 * 登録されている名前の数
+	 */
+	public int size() {
+		return terms.size();
+	}
+}
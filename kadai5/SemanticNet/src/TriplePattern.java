@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 前もって解析しておいた質問リンク (tail, label, head)<br>
+ * 定数の項は辞書での番号にしておき，リンクとは番号同士で照合する．
+ * 照合のたびに文字列を連結したり分割したりしない．
+ * 変数の値は使い回しの配列に書き，照合に成功したときだけ変数束縛情報を作る．
+ * 空白を含む項や ? で始まるノード名など，項ごとの照合にならないものは Matcher で照合する．
+ */
+class TriplePattern {
+	// 照合するリンクの名前を登録した辞書
+	private TermDictionary dictionary;
+	// 質問の各項 (tail, label, head)
+	private String[] terms;
+	// 定数の項は辞書での番号，変数の項は LinkIndex.ANY
+	private int[] constants;
+	// 変数の項は変数の番号，定数の項は -1
+	private int[] slots;
+	// 変数名(番号順)
+	private String[] variables;
+	// すべての項が空白を含まない一つのトークンか
+	private boolean simple;
+	// 変数の値の辞書での番号(照合のたびに使い回す)
+	private int[] values;
+
+	/**
+	 * 質問リンクを解析する
+	 *
+	 * @param theTerms
+	 *            質問の各項 (tail, label, head)
+	 * @param theDictionary
+	 *            照合するリンクの名前を登録した辞書
+	 */
+	TriplePattern(String[] theTerms, TermDictionary theDictionary) {
+		dictionary = theDictionary;
+		terms = theTerms.clone();
+		constants = new int[terms.length];
+		slots = new int[terms.length];
+		ArrayList<String> vars = new ArrayList<String>();
+		simple = true;
+		for (int i = 0; i < terms.length; i++) {
+			String term = terms[i];
+			if (!token(term)) {
+				simple = false;
+			}
+			if (term.startsWith("?")) {
+				int slot = vars.indexOf(term);
+				if (slot < 0) {
+					slot = vars.size();
+					vars.add(term);
+				}
+				constants[i] = LinkIndex.ANY;
+				slots[i] = slot;
+			} else {
+				// 辞書に無い名前は TermDictionary.UNKNOWN になり，どのリンクとも一致しない
+				constants[i] = theDictionary.lookup(term);
+				slots[i] = -1;
+			}
+		}
+		variables = vars.toArray(new String[vars.size()]);
+		values = new int[variables.length];
+	}
+
+	/**
+	 * リンクと照合する
+	 *
+	 * @param theLink
+	 *            セマンティックネットのリンク
+	 * @return 成功したら変数束縛情報，失敗したら null
+	 */
+	public HashMap<String, String> match(Link theLink) {
+		if (!simple) {
+			return matchString(theLink);
+		}
+		int tail = theLink.getTail().getId();
+		int label = theLink.getLabelId();
+		int head = theLink.getHead().getId();
+		for (int i = 0; i < values.length; i++) {
+			values[i] = LinkIndex.ANY;
+		}
+		if (matchTerm(0, tail) && matchTerm(1, label) && matchTerm(2, head)) {
+			return binding();
+		}
+		// 項ごとには照合できないリンクなら，これまでどおり文字列で照合する
+		if (!dictionary.isConstant(tail) || !dictionary.isConstant(label) || !dictionary.isConstant(head)) {
+			return matchString(theLink);
+		}
+		return null;
+	}
+
+	private boolean matchTerm(int i, int theId) {
+		int slot = slots[i];
+		if (slot < 0) {
+			return constants[i] == theId;
+		}
+		int value = values[slot];
+		if (value == LinkIndex.ANY) {
+			if (!dictionary.isConstant(theId)) {
+				// 変数同士や空白を含む名前は項ごとには照合しない
+				return false;
+			}
+			values[slot] = theId;
+			return true;
+		}
+		return value == theId;
+	}
+
+	/**
+	 * 変数の値から変数束縛情報を作る
+	 */
+	private HashMap<String, String> binding() {
+		HashMap<String, String> binding = new HashMap<String, String>();
+		for (int i = 0; i < variables.length; i++) {
+			binding.put(variables[i], dictionary.term(values[i]));
+		}
+		return binding;
+	}
+
+	/**
+	 * Matcher で文字列として照合する
+	 */
+	private HashMap<String, String> matchString(Link theLink) {
+		String theQueryString = terms[0] + " " + terms[1] + " " + terms[2];
+		HashMap<String, String> binding = new HashMap<String, String>();
+		if (new Matcher().matching(theQueryString, theLink.getFullName(), binding)) {
+			return binding;
+		}
+		return null;
+	}
+
+	/**
+	 * 空白を含まず，? で始まらない一つのトークンか
+	 */
+	static boolean constant(String theTerm) {
+		return token(theTerm) && theTerm.charAt(0) != '?';
+	}
+
+	/**
+	 * 空白を含まない一つのトークンか
+	 */
+	static boolean token(String theTerm) {
+		if (theTerm.isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < theTerm.length(); i++) {
+			switch (theTerm.charAt(i)) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\r':
+			case '\f':
+				return false;
+			default:
+				break;
+			}
+		}
+		return true;
+	}
+}